@@ -14,6 +14,9 @@ public class AIController {
     /** Board */
     private Board board;
 
+    /** Shared distance fields used to trace routes */
+    private FlowFieldService flowFields;
+
     /** Current State of Guard */
     public FSMState state;
 
@@ -21,6 +24,10 @@ public class AIController {
     private Vector2[] path;
     private Vector2[] obPath;
 
+    /** Route of each leg of the patrol path; legs[i] leads from point i-1 to point i */
+    private GuardRoute[] legs;
+    private GuardRoute[] obLegs;
+
     /** Index of the path the Guard is currently going towards */
     private int pathIndex;
 
@@ -33,8 +40,30 @@ public class AIController {
     /** Initial direction of the Guard */
     private float initialDirection;
 
-    /** Priority Queue used for Path Finding*/
-    private PriorityQueue<Node> queue;
+    /** Tile path the guard is currently following */
+    private GuardRoute route;
+
+    /** Planner for routes across large boards */
+    private HierarchicalPlanner planner;
+
+    /** Scheduler that rations planning time between guards */
+    private AIScheduler scheduler;
+
+    /** Goal tile of the route planned ahead of this step, or GuardRoute.NONE */
+    private int plannedGoal = GuardRoute.NONE;
+    /** Start tile of the route planned ahead of this step */
+    private int plannedStart;
+    /** Route planned ahead of this step */
+    private GuardRoute planned;
+    /** Whether the route planned ahead reached its goal */
+    private boolean plannedFound;
+
+    /** Goals at least this many tiles away are planned over cluster portals */
+    private static final int LONG_ROUTE = 2 * HierarchicalPlanner.CLUSTER_SIZE;
+
+    /** Offsets to the four neighbors of a tile, in search order */
+    private static final int[] NEIGHBOR_X = {1, -1, 0, 0};
+    private static final int[] NEIGHBOR_Y = {0, 0, 1, -1};
 
     /** Timer for how long guard checks at an alarm */
     private int timer;
@@ -90,18 +119,18 @@ public class AIController {
     private boolean justGoal = false;
 
     /** Initialize with current Guard */
-    public AIController(Board board, GuardModel guard) {
+    public AIController(Board board, FlowFieldService flowFields,
+                        HierarchicalPlanner planner, AIScheduler scheduler, GuardModel guard) {
         this.board = board;
+        this.flowFields = flowFields;
+        this.planner = planner;
+        this.scheduler = scheduler;
         this.guard = guard;
+        route = new GuardRoute(board);
+        planned = new GuardRoute(board);
         itemList = new HashSet<>();
         timer = 0;
         gridTimer = 0;
-        queue = new PriorityQueue<>(new Comparator<Node>(){
-            @Override
-            public int compare(Node n1, Node n2){
-                return n1.priority - n2.priority;
-            }
-        });
     }
 
     /** Sets the path for the guard, linear I.E. walk back and forth */
@@ -109,6 +138,7 @@ public class AIController {
         path = new Vector2[2];
         path[0] = start;
         path[1] = end;
+        legs = createLegs(path);
         currentGoal = start;
         pathIndex = 0;
     }
@@ -116,6 +146,7 @@ public class AIController {
     /** Sets the path for the guard to be a generic array. The guard moves from array index 0 --> 1 --> 2 ... -> 0*/
     public void setPath(Vector2[] path) {
         this.path = path;
+        legs = path == obPath ? obLegs : createLegs(path);
         currentGoal = path[0];
         pathIndex = 0;
     }
@@ -124,6 +155,65 @@ public class AIController {
         return obPath;
     }
 
+    /** Returns an unplanned route for every leg of a patrol path */
+    private GuardRoute[] createLegs(Vector2[] points) {
+        GuardRoute[] result = new GuardRoute[points.length];
+        for (int i = 0; i < points.length; i++) {
+            result[i] = new GuardRoute(board);
+        }
+        return result;
+    }
+
+    /** Plans the route of every leg of the patrol and objective paths
+     *
+     *  This should be called once the level is loaded and the board is up to date.
+     *  Legs are replanned later only if a tile along them changes.
+     */
+    public void buildPatrolRoutes() {
+        planLegs(path, legs);
+        planLegs(obPath, obLegs);
+    }
+
+    /** Plans every leg of a patrol path */
+    private void planLegs(Vector2[] points, GuardRoute[] routes) {
+        if (points == null || points.length < 2) {
+            return;
+        }
+        for (int i = 0; i < points.length; i++) {
+            Vector2 from = points[i == 0 ? points.length - 1 : i - 1];
+            int startX = board.physicsToBoard(from.x);
+            int startY = board.physicsToBoard(from.y);
+            int goalx = board.physicsToBoard(points[i].x);
+            int goaly = board.physicsToBoard(points[i].y);
+            if (board.inBounds(goalx, goaly) && (startX != goalx || startY != goaly) &&
+                    !planRoute(planner, flowFields, startX, startY, goalx, goaly, board.tileIndex(goalx, goaly), routes[i])) {
+                routes[i].clear();
+            }
+        }
+    }
+
+    /** Returns the leg the guard is starting on, or null if it is not at the start of a leg */
+    private GuardRoute currentLeg(int here) {
+        if (legs == null || path.length < 2 || currentGoal != path[pathIndex]) {
+            return null;
+        }
+        Vector2 from = path[pathIndex == 0 ? path.length - 1 : pathIndex - 1];
+        if (here != board.tileIndex(board.physicsToBoard(from.x), board.physicsToBoard(from.y))) {
+            return null;
+        }
+        return legs[pathIndex];
+    }
+
+    /** Starts following the current leg's route, if the guard is on one and it is still good */
+    private boolean loadLeg(int here, int goal) {
+        GuardRoute leg = currentLeg(here);
+        if (leg == null || !leg.isValid(goal)) {
+            return false;
+        }
+        route.set(leg);
+        return true;
+    }
+
     /** Sets the Guard to Patrol state */
     public void setPatrol() {
         guard.getLight().setConeDegree(25);
@@ -185,8 +275,6 @@ public class AIController {
                     currentGoal = lastGoal;
                     goalx = board.physicsToBoard(currentGoal.x);
                     goaly = board.physicsToBoard(currentGoal.y);
-                    board.clearMarks();
-                    board.setGoal(goalx, goaly);
                     lastSwitch = null;
                     lastGoal = null;
                 }
@@ -242,7 +330,6 @@ public class AIController {
                 if (board.getOccupant(goalx, goaly) == 5 && isGrid(guard)) {
 
                     findClosest();
-                    board.clearMarks();
 
                     guard.setMovement(0, 0);
                     guard.applyForce();
@@ -300,70 +387,55 @@ public class AIController {
                         pathIndex = (pathIndex + 1) % path.length;
                         currentGoal = path[pathIndex];
                         justGoal = true;
-                        goalx = board.physicsToBoard(currentGoal.x);
-                        goaly = board.physicsToBoard(currentGoal.y);
-                        board.setGoal(goalx, goaly);
                         break;
-                    } else {
-                        board.setGoal(goalx, goaly);
                     }
                 }
 
                 pathFind();
-
-                board.resetTiles();
                 break;
         }
     }
 
-    /** Finds closest tile to current goal and sets it as current goal */
+    /** Finds closest tile to current goal and sets it as current goal
+     *
+     *  Candidates are the reachable neighbors of the goal, ranked by distance to the
+     *  previous waypoint (ties go to the first in +x, -x, +y, -y order).  Reachability
+     *  comes from the board's components, so no search is needed.
+     */
     private void findClosest() {
-        PriorityQueue<Node> temp = new PriorityQueue<>(new Comparator<Node>(){
-            @Override
-            public int compare(Node n1, Node n2){
-                return n1.priority - n2.priority;
-            }
-        });
-        board.clearMarks();
         int goalx = board.physicsToBoard(currentGoal.x);
         int goaly = board.physicsToBoard(currentGoal.y);
         int guardx = board.physicsToBoard(guard.getX());
         int guardy = board.physicsToBoard(guard.getY());
         int prev = pathIndex-1 < 0 ? path.length-1 : pathIndex-1;
-        Vector2 prevgoal = path[prev];
+        int prevx = board.physicsToBoard(path[prev].x);
+        int prevy = board.physicsToBoard(path[prev].y);
         lastSwitch = null;
-        board.setGoal(goalx+1, goaly);
-        if (board.isWalkable(goalx+1, goaly) && bfs(guardx, guardy) != 0) {
-            Node n1 = new Node(goalx+1, goaly, 0, 1);
-            n1.priority = manDist(board.physicsToBoard(prevgoal.x), board.physicsToBoard(prevgoal.y), goalx+1, goaly);
-            temp.add(n1);
-        }
-        board.clearMarks();
-        board.setGoal(goalx-1, goaly);
-        if (board.isWalkable(goalx-1, goaly) && bfs(guardx, guardy) != 0) {
-            Node n1 = new Node(goalx-1, goaly, 0, 1);
-            n1.priority = manDist(board.physicsToBoard(prevgoal.x), board.physicsToBoard(prevgoal.y), goalx-1, goaly);
-            temp.add(n1);
-        }
-        board.clearMarks();
-        board.setGoal(goalx, goaly+1);
-        if (board.isWalkable(goalx, goaly+1) && bfs(guardx, guardy) != 0) {
-            Node n1 = new Node(goalx, goaly+1, 0, 1);
-            n1.priority = manDist(board.physicsToBoard(prevgoal.x), board.physicsToBoard(prevgoal.y), goalx, goaly+1);
-            temp.add(n1);
 
+        int best = closestReachableNeighbor(guardx, guardy, goalx, goaly, prevx, prevy);
+        if (best != GuardRoute.NONE) {
+            currentGoal = new Vector2(board.boardToScreen(board.tileX(best)), board.boardToScreen(board.tileY(best)));
         }
-        board.clearMarks();
-        board.setGoal(goalx, goaly-1);
-        if (board.isWalkable(goalx, goaly-1) && bfs(guardx, guardy) != 0) {
-            Node n1 = new Node(goalx, goaly-1, 0, 1);
-            n1.priority = manDist(board.physicsToBoard(prevgoal.x), board.physicsToBoard(prevgoal.y), goalx, goaly-1);
-            temp.add(n1);
+    }
 
+    /** Returns the flat index of the neighbor of (goalx,goaly) that the guard can reach and
+     *  that is closest to (prevx,prevy), or GuardRoute.NONE if no neighbor can be reached
+     */
+    private int closestReachableNeighbor(int guardx, int guardy, int goalx, int goaly, int prevx, int prevy) {
+        int best = GuardRoute.NONE;
+        int bestDist = Integer.MAX_VALUE;
+        for (int i = 0; i < NEIGHBOR_X.length; i++) {
+            int x = goalx + NEIGHBOR_X[i];
+            int y = goaly + NEIGHBOR_Y[i];
+            if (board.canReach(guardx, guardy, x, y)) {
+                int priority = manDist(prevx, prevy, x, y);
+                if (priority < bestDist) {
+                    bestDist = priority;
+                    best = board.tileIndex(x, y);
+                }
+            }
         }
-        Node closest = temp.poll();
-        if (closest != null) currentGoal = new Vector2(board.boardToScreen(closest.x) , board.boardToScreen(closest.y));
-        board.clearMarks();
+        return best;
     }
 
     /** Finds the shortest path to goal tile and changes the guard's velocity accordingly
@@ -404,7 +476,7 @@ public class AIController {
                 i = 0;
             } else {
                 gridTimer = 0;
-                i = bfs(guardx, guardy);
+                i = routeStep(guardx, guardy);
             }
         }
 
@@ -415,7 +487,6 @@ public class AIController {
         }
 
         if (turning) {
-            board.clearMarks();
             guard.setMovement(0,0);
             guard.applyForce();
             return;
@@ -446,72 +517,154 @@ public class AIController {
             guard.applyForce();
             guard.walking = true;
         }
-        board.clearMarks();
     }
 
-    /** BFS that looks for shortest path to current goal tile
+    /** Follows the cached route toward the current goal tile
      *
-     *  returns 0 if character is already on Goal (Should not happen)
-     *         -1 if character needs to move left
-     *          1 if character needs to move right
-     *         -2 if character needs to move down
-     *          2 if character needs to move up
+     *  Returns the same action codes as takeAction.  The route is planned again only when
+     *  the goal changes, the guard leaves the route, or a tile still ahead on it
+     *  changes.  An unreachable goal is handled the same way as a search that
+     *  gives up.
      */
-    private int bfs (int startX, int startY) {
-        queue.clear();
-        Node start = new Node(startX, startY, 0,0);
-        queue.add(start);
-        int debug = 0;
-        if (board.isGoal(startX, startY)) return 0;
-
-        while (!queue.isEmpty()) {
-            debug++;
-            if (debug > board.getHeight() * board.getWidth()) {
-                if (lastSwitch != null) {
-                    lastGoal = currentGoal;
-                    updateAISwitch();
-                }
+    private int routeStep(int startX, int startY) {
+        int goalx = board.physicsToBoard(currentGoal.x);
+        int goaly = board.physicsToBoard(currentGoal.y);
+        if (startX == goalx && startY == goaly) return 0;
+        if (!board.inBounds(goalx, goaly)) {
+            route.clear();
+            return giveUp();
+        }
 
-                pathIndex = 0;
-                return 0;
-            }
-            Node n = queue.poll();
-            board.setVisited(n.x, n.y);
-            if (board.isGoal(n.x, n.y)) {
-                if (n.act != prev && isGrid(guard) && justGoal && !guard.getAlarmed()) {
-                    turning = true;
-                    justGoal = false;
-                    turn = 0;
-                    next_dir = n.act;
-                    previous = guard.getDirectionFloat();
-                }
-                prev = n.act;
-                return n.act;
-            }
-            if (board.isWalkable(n.x+1, n.y) && !board.isVisited(n.x+1, n.y))  {
-                int act = n.act == 0 ? 1 : n.act;
-                Node n1 = new Node(n.x+1, n.y, act, n.cost + 1);
-                queue.add(n1);
+        int goal = board.tileIndex(goalx, goaly);
+        int here = board.tileIndex(startX, startY);
+        int act = route.isValid(goal) ? route.nextMove(here) : 0;
+        if (act == 0 && loadLeg(here, goal)) {
+            act = route.nextMove(here);
+        }
+        if (act == 0) {
+            if (!scheduler.canPlan()) {
+                route.clear();
+                return keepGoing(startX, startY);
             }
-            if (board.isWalkable(n.x-1, n.y) && !board.isVisited(n.x-1, n.y)) {
-                int act = n.act == 0 ? -1 : n.act;
-                Node n1 = new Node(n.x-1, n.y, act, n.cost + 1);
-                queue.add(n1);
+            long time = System.nanoTime();
+            boolean found = planRoute(planner, flowFields, startX, startY, goalx, goaly, goal, route);
+            scheduler.charge(System.nanoTime() - time);
+            if (!found) {
+                route.clear();
+                return giveUp();
             }
-            if (board.isWalkable(n.x, n.y+1) && !board.isVisited(n.x, n.y+1)) {
-                int act = n.act == 0 ? 2 : n.act;
-                Node n1 = new Node(n.x, n.y+1, act, n.cost + 1);
-                queue.add(n1);
+            GuardRoute leg = currentLeg(here);
+            if (leg != null) {
+                leg.set(route);
             }
-            if (board.isWalkable(n.x, n.y-1) && !board.isVisited(n.x, n.y-1)) {
-                int act = n.act == 0 ? -2 : n.act;
-                Node n1 = new Node(n.x, n.y-1, act, n.cost + 1);
-                queue.add(n1);
+            act = route.nextMove(here);
+        }
+        return takeAction(act);
+    }
+
+    /** Returns true if the guard needs a new route for its current goal
+     *
+     *  A guard starting a patrol leg with a good precomputed route picks it up here.
+     *  Otherwise this remembers the start and goal for planAhead().  Game thread only.
+     */
+    public boolean needsRoute() {
+        plannedGoal = GuardRoute.NONE;
+        plannedFound = false;
+        if (state == FSMState.SLEEP || currentGoal == null || turning || !isGrid(guard)) {
+            return false;
+        }
+        int goalx = board.physicsToBoard(currentGoal.x);
+        int goaly = board.physicsToBoard(currentGoal.y);
+        int guardx = board.physicsToBoard(guard.getX());
+        int guardy = board.physicsToBoard(guard.getY());
+        if ((guardx == goalx && guardy == goaly) || !board.canReach(guardx, guardy, goalx, goaly)) {
+            return false;
+        }
+        int goal = board.tileIndex(goalx, goaly);
+        int here = board.tileIndex(guardx, guardy);
+        if (route.isFollowing(goal, here) || loadLeg(here, goal)) {
+            return false;
+        }
+        plannedGoal = goal;
+        plannedStart = here;
+        return true;
+    }
+
+    /** Plans the route asked for by needsRoute() with the given planners
+     *
+     *  This reads the board and touches nothing else but the planners and this
+     *  controller's planned route, so controllers with their own planners can plan
+     *  ahead on different threads while the board does not change.
+     */
+    public void planAhead(HierarchicalPlanner planner, FlowFieldService flowFields) {
+        plannedFound = planRoute(planner, flowFields, board.tileX(plannedStart), board.tileY(plannedStart),
+                board.tileX(plannedGoal), board.tileY(plannedGoal), plannedGoal, planned);
+    }
+
+    /** Starts following the route planned ahead, if it was found and is still good */
+    public void applyPlanned() {
+        if (plannedGoal != GuardRoute.NONE && plannedFound && planned.isValid(plannedGoal)) {
+            route.set(planned);
+            GuardRoute leg = currentLeg(plannedStart);
+            if (leg != null) {
+                leg.set(route);
             }
         }
+        plannedGoal = GuardRoute.NONE;
+    }
+
+    /** Keeps the guard moving while it waits for planning time
+     *
+     *  The guard carries on in its last direction if the next tile is walkable, and
+     *  waits in place if it is not or if it has just reached a waypoint.
+     */
+    private int keepGoing(int startX, int startY) {
+        if (justGoal) return 0;
+        if (prev == 1 && board.isWalkable(startX+1, startY)) return prev;
+        if (prev == -1 && board.isWalkable(startX-1, startY)) return prev;
+        if (prev == 2 && board.isWalkable(startX, startY+1)) return prev;
+        if (prev == -2 && board.isWalkable(startX, startY-1)) return prev;
         return 0;
     }
 
+    /** Plans a new route to the goal tile, returning false if it cannot be reached
+     *
+     *  Long trips are planned hierarchically; everything else (and anything the
+     *  hierarchical planner misses) is traced from the flow field.  The serial path
+     *  passes the shared planners; planning ahead on a worker passes the worker's own.
+     */
+    private boolean planRoute(HierarchicalPlanner planner, FlowFieldService flowFields,
+                              int startX, int startY, int goalx, int goaly, int goal, GuardRoute into) {
+        if (manDist(startX, startY, goalx, goaly) >= LONG_ROUTE &&
+                planner.plan(startX, startY, goalx, goaly, into.begin(goal))) {
+            return true;
+        }
+        return flowFields.tracePath(startX, startY, goalx, goaly, into.begin(goal));
+    }
+
+    /** Handles an unreachable goal: heads for the last switch's doors, if any */
+    private int giveUp() {
+        if (lastSwitch != null) {
+            lastGoal = currentGoal;
+            updateAISwitch();
+        }
+        pathIndex = 0;
+        return 0;
+    }
+
+    /** Commits to a move, starting a turn first if the guard just reached a waypoint */
+    private int takeAction(int act) {
+        if (act != prev && isGrid(guard) && justGoal && !guard.getAlarmed()) {
+            turning = true;
+            justGoal = false;
+            turn = 0;
+            next_dir = act;
+            previous = guard.getDirectionFloat();
+        }
+        prev = act;
+        return act;
+    }
+
     /** Sets the last switched switch for the guards */
     public void setLastSwitch (SwitchModel swtch){
         lastSwitch = swtch;
@@ -531,33 +684,6 @@ public class AIController {
         findClosest();
     }
 
-    /** Private class for keeping track of board tiles */
-    private class Node {
-        public int x;
-        public int y;
-        public int cost;
-
-        // -1 for -x, 1 for +x, -2 for -y, 2 for +y
-        public int act;
-        public int priority;
-
-        public Node(int x, int y, int act, int cost) {
-            this.x = x;
-            this.y = y;
-            this.cost = cost;
-            this.act = act;
-            int goalx = board.physicsToBoard(currentGoal.x);
-            int goaly = board.physicsToBoard(currentGoal.y);
-            this.priority = manDist(x,y,goalx,goaly) + cost;
-        }
-
-        // Debug
-        public String toString(){
-            String s = this.x+" "+this.y;
-            return s;
-        }
-    }
-
     /** Checks if Guard is currently on a valid tile I.E. guards can only walk on the center of tiles.*/
     public boolean isGrid(GuardModel guard) {
         float gX = guard.getX() * 10;
@@ -576,6 +702,7 @@ public class AIController {
                 int j = i * 2;
                 path[i] = new Vector2(paths[j] + 0.5f , paths[j + 1] + 0.5f );
             }
+            legs = createLegs(path);
         }
         if (json.has("objectivepath")) {
             float[] obPaths = json.get("objectivepath").asFloatArray();
@@ -584,6 +711,7 @@ public class AIController {
                 int j = i * 2;
                 obPath[i] = new Vector2(obPaths[j] + 0.5f , obPaths[j + 1] + 0.5f );
             }
+            obLegs = createLegs(obPath);
         }
 
         String status = json.get("status").asString();
@@ -0,0 +1,222 @@
+package edu.cornell.gdiac.b2lights;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the guard controllers each step and limits how much time they spend planning.
+ *
+ * Every controller still updates every step, but a controller that needs a new route
+ * only gets to plan one while the step's planning budget lasts.  Alarmed guards go
+ * first; the rest take turns, starting one further along the list each step, so no
+ * guard waits for long.  The first plan of a step is always allowed.
+ *
+ * In parallel mode (off unless asked for), the guards that will need a route this
+ * step get them planned ahead on a worker pool, one batch of a route per worker at a
+ * time until the budget runs out.  The workers search the shared planner's portal
+ * graph, which the game thread brings up to date before each batch, and keep only
+ * their own search scratch space and a few flow fields, so the routes are the same
+ * ones the game thread would plan.  That scratch belongs to the worker threads and
+ * goes with the pool when the level is reset.  The board does not change while a
+ * batch runs, as the game thread waits for it.  The routes are
+ * handed back in update order, so the result does not depend on which worker finishes
+ * first.
+ */
+public class AIScheduler {
+    /** Default planning budget per step, in microseconds */
+    public static final long DEFAULT_BUDGET = 1000;
+    /** Flow fields each worker keeps at once */
+    private static final int WORKER_FIELDS = 4;
+
+    /** Planning budget per step, in nanoseconds */
+    private long budget;
+    /** Planning time spent so far this step, in nanoseconds */
+    private long spent;
+    /** Where in the controller list the unalarmed guards start this step */
+    private int offset;
+    /** Controllers in this step's update order */
+    private ArrayList<AIController> order;
+
+    /** Board the guards walk on */
+    private Board board;
+    /** Planners shared by the controllers, used when the game thread plans */
+    private HierarchicalPlanner planner;
+    private FlowFieldService flowFields;
+    /** Whether routes are planned ahead on the worker pool */
+    private boolean parallel;
+    /** Worker pool, created the first time it is needed */
+    private ForkJoinPool pool;
+    /** Walk version of the board when its components were last flattened */
+    private int flattened = -1;
+    /** Controllers that need a route this step */
+    private ArrayList<AIController> requests;
+
+    /** Worker thread with its own search scratch space */
+    private static class Worker extends ForkJoinWorkerThread {
+        /** Planner sharing the game thread's portal graph */
+        private HierarchicalPlanner planner;
+        /** Flow fields of this worker */
+        private FlowFieldService flowFields;
+
+        public Worker(ForkJoinPool pool, Board board, HierarchicalPlanner shared, boolean incremental) {
+            super(pool);
+            planner = new HierarchicalPlanner(shared);
+            flowFields = new FlowFieldService(board, WORKER_FIELDS);
+            flowFields.setIncremental(incremental);
+        }
+    }
+
+    /** Plans ahead for a range of the requests, splitting it across workers */
+    private class PlanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private int lo;
+        private int hi;
+
+        public PlanTask(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) / 2;
+                invokeAll(new PlanTask(lo, mid), new PlanTask(mid, hi));
+                return;
+            }
+            Thread thread = Thread.currentThread();
+            if (thread instanceof Worker) {
+                Worker worker = (Worker)thread;
+                requests.get(lo).planAhead(worker.planner, worker.flowFields);
+            } else {
+                // The waiting game thread may run a task itself
+                requests.get(lo).planAhead(planner, flowFields);
+            }
+        }
+    }
+
+    /** Creates a scheduler with the default budget for guards on the given board
+     *
+     *  @param planner      the hierarchical planner the controllers share
+     *  @param flowFields   the flow fields the controllers share
+     */
+    public AIScheduler(Board board, HierarchicalPlanner planner, FlowFieldService flowFields) {
+        this.board = board;
+        this.planner = planner;
+        this.flowFields = flowFields;
+        budget = DEFAULT_BUDGET * 1000;
+        order = new ArrayList<>();
+        requests = new ArrayList<>();
+    }
+
+    /** Sets whether routes are planned ahead on a worker pool */
+    public void setParallel(boolean value) {
+        parallel = value;
+    }
+
+    /** Returns true if routes are planned ahead on a worker pool */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /** Shuts down the worker pool, releasing the workers' scratch space */
+    public void dispose() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /** Sets the planning budget per step, in microseconds */
+    public void setBudget(long micros) {
+        budget = micros * 1000;
+    }
+
+    /** Returns the planning budget per step, in microseconds */
+    public long getBudget() {
+        return budget / 1000;
+    }
+
+    /** Updates every controller for one step, alarmed guards first */
+    public void update(ArrayList<AIController> controls) {
+        spent = 0;
+        order.clear();
+        int n = controls.size();
+        for (int i = 0; i < n; i++) {
+            AIController ai = controls.get((offset + i) % n);
+            if (ai.getGuard().getAlarmed()) {
+                order.add(ai);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            AIController ai = controls.get((offset + i) % n);
+            if (!ai.getGuard().getAlarmed()) {
+                order.add(ai);
+            }
+        }
+        offset = n == 0 ? 0 : (offset + 1) % n;
+
+        if (parallel) {
+            planAhead();
+        }
+        for (AIController ai : order) {
+            ai.update();
+        }
+    }
+
+    /** Plans the routes needed this step on the worker pool, a batch at a time while the budget lasts
+     *
+     *  Each batch is charged the time the game thread waited for it.  Routes left
+     *  unplanned are planned inline, or not, as the budget allows.
+     */
+    private void planAhead() {
+        requests.clear();
+        for (AIController ai : order) {
+            if (ai.needsRoute()) {
+                requests.add(ai);
+            }
+        }
+        // A single route is cheaper to plan inline than to hand to the pool
+        if (requests.size() < 2) {
+            for (AIController ai : requests) {
+                ai.applyPlanned();
+            }
+            return;
+        }
+
+        // The workers only read the components and the portal graph
+        long time = System.nanoTime();
+        if (flattened != board.getWalkVersion()) {
+            board.flattenComponents();
+            flattened = board.getWalkVersion();
+        }
+        planner.refresh();
+        charge(System.nanoTime() - time);
+        if (pool == null) {
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                    p -> new Worker(p, board, planner, flowFields.isIncremental()), null, false);
+        }
+        int batch = pool.getParallelism();
+        for (int lo = 0; lo < requests.size() && canPlan(); lo += batch) {
+            time = System.nanoTime();
+            pool.invoke(new PlanTask(lo, Math.min(lo + batch, requests.size())));
+            charge(System.nanoTime() - time);
+        }
+        for (AIController ai : requests) {
+            ai.applyPlanned();
+        }
+    }
+
+    /** Returns true if there is planning time left this step */
+    public boolean canPlan() {
+        return spent < budget;
+    }
+
+    /** Charges planning time (in nanoseconds) against this step's budget */
+    public void charge(long nanos) {
+        spent += nanos;
+    }
+}
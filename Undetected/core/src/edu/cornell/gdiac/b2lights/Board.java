@@ -24,51 +24,56 @@
  */
 package edu.cornell.gdiac.b2lights;
 
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.g2d.SpriteCache;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
 import edu.cornell.gdiac.physics.obstacle.ObstacleCanvas;
 
+import java.util.Arrays;
+
 /**
  * Class represents a 2D grid of tiles.
  *
- * Most of the work is done by the internal Tile class.  The outer class is
- * really just a container.
+ * Tile attributes are stored as parallel primitive arrays (and bitsets) indexed by
+ * flat tile index, rather than as one object per tile.
+ *
+ * The occupant, texture and version layers are chunked, so they take memory for the
+ * occupied area alone.  Only the component labels (and the per-tile arrays of
+ * FlowFieldService and HierarchicalPlanner) are flat arrays over the whole bounding
+ * box; the union-find parents and the flood queue grow as they are used.
  */
 public class Board {
 
 	/**
-	 * Each tile has a set of attributes associated with it.
-	 */
-	private static class TileState{
-		/** Is this a valid tile? */
-		public boolean isValid = true;
-		/** Is this tile occupied? */
-		public boolean isOccupied = false;
-		/** Type of object at this tile
-		 * 0: Nothing
-		 * 1: Wall
-		 * 2: Guard
-		 * 3: Player Character
-		 * 4: Laser
-		 * 5: Box
-		 * 6: Open Door
-		 * 7: Closed Door
-         * 8: Switch
-		 * 9: Exit*/
-		public int occupant = 0;
-		/** Is this a goal tile (used for pathfinding)? */
-		public boolean goal = false;
-		/** Has this tile been visited (used for pathfinding)? */
-		public boolean visited = false;
-		public int textureIndex = 0;
-
-		/** Has this tile been recently marked?*/
-		public int temp = 0;
+	 * Receives the tiles whose occupant changed during a step.
+	 */
+	public interface TileListener {
+		/**
+		 * Called once at the end of every step in which an occupant changed
+		 *
+		 * The three lists are parallel and only valid during the call.
+		 *
+		 * @param board The board that changed
+		 * @param step The step that just ended
+		 * @param tiles Flat indices of the tiles that changed
+		 * @param oldOccupants Occupant of each tile before the step
+		 * @param newOccupants Occupant of each tile after the step
+		 */
+		public void tilesChanged(Board board, int step, IntArray tiles, IntArray oldOccupants, IntArray newOccupants);
 	}
 
-	
 	// Constants
+	/** Bitmask of the occupant types a guard can walk through */
+	private static final int WALKABLE_OCCUPANTS = (1 << 0) | (1 << 2) | (1 << 3) | (1 << 4) | (1 << 6) | (1 << 8);
+	/** When several objects share a tile, the occupant with the highest priority is reported */
+	private static final int[] OCCUPANT_PRIORITY = {0, 9, 5, 4, 1, 6, 2, 7, 3, 8};
+	/** Width and height of a chunk of tiles */
+	public static final int CHUNK_SIZE = 16;
+	/** Occupant types kept in the dynamic layer, and their slot in Chunk.dynamicCounts */
+	private static final int[] DYNAMIC_SLOT = {-1, -1, 0, 1, -1, 2, 3, 4, -1, -1};
+	private static final int[] DYNAMIC_TYPE = {2, 3, 5, 6, 7};
 	/** Color of a regular tile */
 	private static final Color BASIC_COLOR = new Color(0.25f, 0.25f, 0.25f, 0.5f);
 	/** Highlight color for power tiles */
@@ -81,14 +86,98 @@ public class Board {
 	private int width;
 	/** The board height (in number of tiles) */
 	private int height;
-	/** The tile grid (with above dimensions) */
-	private TileState[] tiles;
+	/** Type of object at each tile, by flat index
+	 * 0: Nothing
+	 * 1: Wall
+	 * 2: Guard
+	 * 3: Player Character
+	 * 4: Laser
+	 * 5: Box
+	 * 6: Open Door
+	 * 7: Closed Door
+	 * 8: Switch
+	 * 9: Exit
+	 *
+	 * Occupants and textures are kept in CHUNK_SIZE x CHUNK_SIZE chunks, which are only
+	 * allocated once something is written to them.  A missing chunk reads as empty.*/
+	private Chunk[] chunks;
+	/** Number of chunks along the y axis */
+	private int chunksHigh;
+	/** Number of valid tiles in each chunk */
+	private short[] chunkValidCounts;
+	/** Bitset of the tiles that exist */
+	private long[] validBits;
+	/** Bitset of the tiles a guard can walk on right now */
+	private long[] walkableBits;
 	/** Texture of valid tile */
 	private TextureRegion tileTexture;
 	private TextureRegion[] tileTextures;
+	/** Floor tiles baked into one mesh, built the first time it is drawn */
+	private SpriteCache floorCache;
+	/** Id of the floor in floorCache */
+	private int floorId;
+	/** Number of tiles floorCache has room for */
+	private int floorCapacity;
+	/** Whether the tiles changed since floorCache was built */
+	private boolean floorDirty = true;
 
 	private int temp = 0;
 
+	/** Tile data of one chunk, indexed by chunkSlot() */
+	private static class Chunk {
+		/** Occupant of each tile, resolved from the two layers below */
+		byte[] occupants = new byte[CHUNK_SIZE * CHUNK_SIZE];
+		/** Occupant of each tile from objects that never move */
+		byte[] staticOccupants = new byte[CHUNK_SIZE * CHUNK_SIZE];
+		/** Number of moving objects of each dynamic type on each tile, as [slot][tile] */
+		byte[][] dynamicCounts = new byte[DYNAMIC_TYPE.length][CHUNK_SIZE * CHUNK_SIZE];
+		/** Texture of each tile */
+		short[] textureIndices = new short[CHUNK_SIZE * CHUNK_SIZE];
+		/** Walk version in which each tile last changed walkability */
+		int[] tileVersions = new int[CHUNK_SIZE * CHUNK_SIZE];
+		/** Step in which each tile's occupant last changed */
+		int[] occupantVersions = new int[CHUNK_SIZE * CHUNK_SIZE];
+		/** Step in which each tile was added to the pending changes (to add it once) */
+		int[] pendingMarks = new int[CHUNK_SIZE * CHUNK_SIZE];
+	}
+
+	/** Number of times the walkable layout has changed (used to invalidate path caches) */
+	private int walkVersion = 0;
+	/** Bitset of walkable tiles as of the last call to refreshWalkable() */
+	private long[] walkCacheBits;
+	/** Latest walk version in which a tile of each missing chunk changed walkability */
+	private int[] chunkVersions;
+	/** Recent walkability changes, oldest first (flat tile indices) */
+	private IntArray changeLog;
+	/** Walk version of each entry in changeLog */
+	private IntArray changeLogVersions;
+	/** Every change made after this walk version is still in the log */
+	private int changeLogStart = 0;
+
+	/** Number of steps ended so far (see refreshWalkable) */
+	private int step = 0;
+	/** Tiles whose occupant changed during the current step, and their occupant before it */
+	private IntArray pendingTiles;
+	private IntArray pendingOccupants;
+	/** Tiles whose occupant changed during the last step, with old and new occupants */
+	private IntArray stepTiles;
+	private IntArray stepOldOccupants;
+	private IntArray stepNewOccupants;
+	/** Objects told about every step's changes */
+	private Array<TileListener> listeners;
+
+	/** Connected component label of each walkable tile, or -1 */
+	private int[] components;
+	/** Union-find parent of each component label, grown as labels are used */
+	private int[] componentParents;
+	/** Next unused component label */
+	private int componentCount = 0;
+	/** First label of the current flood pass; tiles with a lower label are not yet flooded */
+	private int floodStart = 0;
+	/** Scratch queue for flood fills, and the position of its head */
+	private IntArray floodQueue;
+	private int floodHead;
+
 	/**
 	 * Creates a new board of the given size
 	 *
@@ -99,15 +188,35 @@ public class Board {
 		this.width = width;
 		this.height = height;
 		this.TILE_WIDTH = tileWidth;
-		tiles = new TileState[width * height];
-		for (int ii = 0; ii < tiles.length; ii++) {
-			tiles[ii] = new TileState();
+		int words = (width * height + 63) / 64;
+		int chunksWide = (width + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		chunksHigh = (height + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		chunks = new Chunk[chunksWide * chunksHigh];
+		chunkValidCounts = new short[chunks.length];
+		validBits = new long[words];
+		for (int ii = 0; ii < width * height; ii++) {
+			setBit(validBits, ii, true);
+			chunkValidCounts[chunkIndex(tileX(ii), tileY(ii))]++;
 		}
-		resetTiles();
+		walkableBits = validBits.clone();
+		walkCacheBits = new long[words];
+		chunkVersions = new int[chunks.length];
+		changeLog = new IntArray();
+		changeLogVersions = new IntArray();
+		pendingTiles = new IntArray();
+		pendingOccupants = new IntArray();
+		stepTiles = new IntArray();
+		stepOldOccupants = new IntArray();
+		stepNewOccupants = new IntArray();
+		listeners = new Array<TileListener>();
+		components = new int[width * height];
+		Arrays.fill(components, -1);
+		componentParents = new int[CHUNK_SIZE];
+		floodQueue = new IntArray();
 	}
 
 	public int getOccupantAt(int x, int y){
-		return getTileState(x,y).occupant;
+		return getOccupant(x, y);
 	}
 
 	/**
@@ -115,7 +224,7 @@ public class Board {
 	 */
 	public void setInvalidTiles(int[] invalidTiles) {
 		for(int i=0;i<invalidTiles.length;i+=2){
-			getTileState(invalidTiles[i],invalidTiles[i+1]).isValid = false;
+			setValid(invalidTiles[i], invalidTiles[i+1], false);
 		}
 	}
 
@@ -124,60 +233,173 @@ public class Board {
 			int xindex = i%width;
 			int yindex = height - (i/width) - 1;
 			if (tiles[i] == 0)
-				getTileState(xindex,yindex).isValid = false;
-			else
-				getTileState(xindex,yindex).textureIndex = (tiles[i] - 1<9?tiles[i]-1:0);
+				setValid(xindex, yindex, false);
+			else if (tiles[i] - 1 > 0 && tiles[i] - 1 < 9)
+				obtainChunk(xindex, yindex).textureIndices[chunkSlot(xindex, yindex)] = (short)(tiles[i] - 1);
 		}
+		floorDirty = true;
 	}
 
 	/**
 	 * Sets occupant of tiles
+	 *
+	 * This writes to the static layer, so it is meant for objects that never move.
+	 * If the tile already has a static occupant, the one with the higher priority
+	 * is kept.
 	 */
 	public void setOccupiedTiles(int x, int y, int oType) {
 		if (isSafeAt(x,y)) {
-			getTileState(x, y).isOccupied = true;
-			getTileState(x, y).occupant = oType;
+			Chunk chunk = obtainChunk(x, y);
+			int slot = chunkSlot(x, y);
+			if (OCCUPANT_PRIORITY[oType] > OCCUPANT_PRIORITY[chunk.staticOccupants[slot]]) {
+				chunk.staticOccupants[slot] = (byte)oType;
+				resolveOccupant(x, y);
+			}
 		}
 	}
-	
+
+	/**
+	 * Adds a moving object (guard, player, box or door) to a tile
+	 *
+	 * Every call should be matched by a later removeDynamicOccupant() with the
+	 * same arguments when the object leaves the tile or changes type.
+	 *
+	 * @param index The flat index of the tile
+	 * @param oType The occupant type of the object (2, 3, 5, 6 or 7)
+	 */
+	public void addDynamicOccupant(int index, int oType) {
+		int x = tileX(index);
+		int y = tileY(index);
+		obtainChunk(x, y).dynamicCounts[DYNAMIC_SLOT[oType]][chunkSlot(x, y)]++;
+		resolveOccupant(x, y);
+	}
+
 	/**
-	 * Resets the values of all the tiles on screen.
-	 */
-	public void resetTiles() {
-		for (int x = 0; x < width; x++) {
-			for (int y = 0; y < height; y++) {
-				TileState tile = getTileState(x, y);
-//				tile.isValid = true;
-				tile.goal = false;
-				tile.visited = false;
-//				tile.isOccupied = false;
-//				tile.occupant = 0;
+	 * Removes a moving object added by addDynamicOccupant() from a tile
+	 *
+	 * @param index The flat index of the tile
+	 * @param oType The occupant type of the object (2, 3, 5, 6 or 7)
+	 */
+	public void removeDynamicOccupant(int index, int oType) {
+		int x = tileX(index);
+		int y = tileY(index);
+		obtainChunk(x, y).dynamicCounts[DYNAMIC_SLOT[oType]][chunkSlot(x, y)]--;
+		resolveOccupant(x, y);
+	}
+
+	/**
+	 * Recomputes the occupant of a tile from its static and dynamic layers.
+	 */
+	private void resolveOccupant(int x, int y) {
+		Chunk chunk = obtainChunk(x, y);
+		int slot = chunkSlot(x, y);
+		int best = chunk.staticOccupants[slot];
+		for (int ii = 0; ii < DYNAMIC_TYPE.length; ii++) {
+			int type = DYNAMIC_TYPE[ii];
+			if (chunk.dynamicCounts[ii][slot] > 0 && OCCUPANT_PRIORITY[type] > OCCUPANT_PRIORITY[best]) {
+				best = type;
 			}
 		}
+		int index = tileIndex(x, y);
+		int old = chunk.occupants[slot];
+		if (old != best && chunk.pendingMarks[slot] != step + 1) {
+			chunk.pendingMarks[slot] = step + 1;
+			pendingTiles.add(index);
+			pendingOccupants.add(old);
+		}
+		chunk.occupants[slot] = (byte)best;
+		updateWalkable(index);
 	}
 
-	public void resetOccupants(){
-		for (int x = 0; x < width; x++) {
-			for (int y = 0; y < height; y++) {
-				TileState tile = getTileState(x, y);
-				tile.isOccupied = false;
-				tile.occupant = 0;
-			}
+	/**
+	 * Returns the index of the chunk holding tile (x,y).
+	 */
+	private int chunkIndex(int x, int y) {
+		return (x / CHUNK_SIZE) * chunksHigh + y / CHUNK_SIZE;
+	}
+
+	/**
+	 * Returns the position of tile (x,y) within its chunk.
+	 */
+	private static int chunkSlot(int x, int y) {
+		return (x % CHUNK_SIZE) * CHUNK_SIZE + y % CHUNK_SIZE;
+	}
+
+	/**
+	 * Returns the chunk holding tile (x,y), allocating it if needed.
+	 */
+	private Chunk obtainChunk(int x, int y) {
+		int c = chunkIndex(x, y);
+		if (chunks[c] == null) {
+			chunks[c] = new Chunk();
+			Arrays.fill(chunks[c].tileVersions, chunkVersions[c]);
 		}
+		return chunks[c];
 	}
-	
+
 	/**
-	 * Returns the tile state for the given position (INTERNAL USE ONLY)
+	 * Returns the occupant of the tile at a flat index, without a bounds check.
+	 */
+	private int occupantAt(int index) {
+		int x = tileX(index);
+		int y = tileY(index);
+		Chunk chunk = chunks[chunkIndex(x, y)];
+		return chunk == null ? 0 : chunk.occupants[chunkSlot(x, y)];
+	}
+
+	/**
+	 * Marks a tile as existing or not (INTERNAL USE ONLY)
+	 */
+	private void setValid(int x, int y, boolean value) {
+		int index = tileIndex(x, y);
+		if (getBit(validBits, index) != value) {
+			chunkValidCounts[chunkIndex(x, y)] += value ? 1 : -1;
+		}
+		setBit(validBits, index, value);
+		updateWalkable(index);
+		floorDirty = true;
+	}
+
+	/**
+	 * Recomputes the live walkable bit of a tile from its validity and occupant.
+	 */
+	private void updateWalkable(int index) {
+		int occupant = occupantAt(index);
+		setBit(walkableBits, index, getBit(validBits, index) && occupant >= 0 && occupant < 32
+				&& ((WALKABLE_OCCUPANTS >> occupant) & 1) != 0);
+	}
+
+	/**
+	 * Returns the bit at index in a bitset.
+	 */
+	private static boolean getBit(long[] bits, int index) {
+		return (bits[index >> 6] & (1L << index)) != 0;
+	}
+
+	/**
+	 * Sets bit index of a bitset to the given value.
+	 */
+	private static void setBit(long[] bits, int index, boolean value) {
+		if (value) {
+			bits[index >> 6] |= 1L << index;
+		} else {
+			bits[index >> 6] &= ~(1L << index);
+		}
+	}
+
+	/**
+	 * Copies the walkable state of every tile into a row-major mask
 	 *
-	 * Returns null if that position is out of bounds.
+	 * Entry y*width+x of the mask is true if a guard can walk on (x,y).
 	 *
-	 * @return the tile state for the given position 
+	 * @param out The mask to fill, at least width*height long
 	 */
-	private TileState getTileState(int x, int y) {
-		if (!inBounds(x, y)) {
-			return null;
+	public void getWalkableMask(boolean[] out) {
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				out[y * width + x] = getBit(walkableBits, tileIndex(x, y));
+			}
 		}
-		return tiles[x * height + y];
 	}
 
 	/** 
@@ -229,6 +451,17 @@ public class Board {
 	public void setTileTexture(TextureRegion texture) {
 		tileTextures = texture.split(32,32)[0];
 		tileTexture = tileTextures[0];
+		floorDirty = true;
+	}
+
+	/**
+	 * Releases the baked floor mesh.
+	 */
+	public void dispose() {
+		if (floorCache != null) {
+			floorCache.dispose();
+			floorCache = null;
+		}
 	}
 
 
@@ -250,7 +483,7 @@ public class Board {
 		return x >= 0 && y >= 0
 				&& x < width * getTileSize()
 				&& y < height * getTileSize()
-				&& getTileState(bx, by).isValid;
+				&& getBit(validBits, tileIndex(bx, by));
 	}
 
 	/**
@@ -263,7 +496,7 @@ public class Board {
 	 */
 	public boolean isSafeAt(int x, int y) {
 		return x >= 0 && y >= 0 && x < width && y < height
-				&& getTileState(x, y).isValid;
+				&& getBit(validBits, tileIndex(x, y));
 	}
 
 
@@ -275,9 +508,437 @@ public class Board {
 	 * @return true if screen location can be walked on by a guard
 	 */
 	public boolean isWalkable(int x, int y) {
-		return isSafeAt(x,y) &&
-		(getTileState(x,y).occupant == 0 || getTileState(x,y).occupant == 4 || getTileState(x,y).occupant == 3
-				|| getTileState(x,y).occupant == 6 || getTileState(x,y).occupant == 8 || getTileState(x, y).occupant == 2);
+		return x >= 0 && y >= 0 && x < width && y < height
+				&& getBit(walkableBits, tileIndex(x, y));
+	}
+
+	/**
+	 * Recomputes the walkable state of every tile.
+	 *
+	 * If any tile changed since the last call, the walk version is incremented and
+	 * every changed tile is stamped with the new version. This should be called once
+	 * per step, after all of the occupants have been placed.  It also ends the step
+	 * for the occupant change journal and tells any listeners what changed.
+	 */
+	public void refreshWalkable() {
+		int version = walkVersion + 1;
+		int first = changeLog.size;
+		boolean changed = false;
+		for (int word = 0; word < walkableBits.length; word++) {
+			long diff = walkableBits[word] ^ walkCacheBits[word];
+			if (diff == 0) {
+				continue;
+			}
+			walkCacheBits[word] = walkableBits[word];
+			while (diff != 0) {
+				int index = (word << 6) + Long.numberOfTrailingZeros(diff);
+				diff &= diff - 1;
+				int x = tileX(index);
+				int y = tileY(index);
+				Chunk chunk = chunks[chunkIndex(x, y)];
+				if (chunk == null) {
+					chunkVersions[chunkIndex(x, y)] = version;
+				} else {
+					chunk.tileVersions[chunkSlot(x, y)] = version;
+				}
+				changeLog.add(index);
+				changeLogVersions.add(version);
+				changed = true;
+			}
+		}
+		if (changed) {
+			walkVersion = version;
+			updateComponents(first);
+			trimChangeLog();
+		}
+		endStep();
+	}
+
+	/**
+	 * Publishes the occupant changes of the current step and starts the next one.
+	 *
+	 * A tile that changed and then changed back within the step is left out.
+	 */
+	private void endStep() {
+		step++;
+		stepTiles.clear();
+		stepOldOccupants.clear();
+		stepNewOccupants.clear();
+		for (int ii = 0; ii < pendingTiles.size; ii++) {
+			int index = pendingTiles.get(ii);
+			int old = pendingOccupants.get(ii);
+			int occupant = occupantAt(index);
+			if (occupant != old) {
+				chunks[chunkIndex(tileX(index), tileY(index))].occupantVersions[chunkSlot(tileX(index), tileY(index))] = step;
+				stepTiles.add(index);
+				stepOldOccupants.add(old);
+				stepNewOccupants.add(occupant);
+			}
+		}
+		pendingTiles.clear();
+		pendingOccupants.clear();
+		if (stepTiles.size > 0) {
+			for (TileListener listener : listeners) {
+				listener.tilesChanged(this, step, stepTiles, stepOldOccupants, stepNewOccupants);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of steps ended so far
+	 *
+	 * @return the number of steps ended so far
+	 */
+	public int getStep() {
+		return step;
+	}
+
+	/**
+	 * Returns the step in which a tile's occupant last changed (0 if never)
+	 *
+	 * @param index The flat index of the tile
+	 *
+	 * @return the step in which the tile's occupant last changed
+	 */
+	public int getOccupantVersion(int index) {
+		int x = tileX(index);
+		int y = tileY(index);
+		Chunk chunk = chunks[chunkIndex(x, y)];
+		return chunk == null ? 0 : chunk.occupantVersions[chunkSlot(x, y)];
+	}
+
+	/**
+	 * Returns the tiles whose occupant changed during the last step
+	 *
+	 * The list is parallel to getOldOccupants() and getNewOccupants(). It belongs to
+	 * the board and must not be modified; it is replaced when the next step ends.
+	 *
+	 * @return flat indices of the tiles that changed
+	 */
+	public IntArray getChangedTiles() {
+		return stepTiles;
+	}
+
+	/**
+	 * Returns the occupant before the last step of each tile in getChangedTiles()
+	 *
+	 * @return the old occupants, parallel to getChangedTiles()
+	 */
+	public IntArray getOldOccupants() {
+		return stepOldOccupants;
+	}
+
+	/**
+	 * Returns the occupant after the last step of each tile in getChangedTiles()
+	 *
+	 * @return the new occupants, parallel to getChangedTiles()
+	 */
+	public IntArray getNewOccupants() {
+		return stepNewOccupants;
+	}
+
+	/**
+	 * Adds a listener to be told about the tiles that change each step
+	 *
+	 * @param listener The listener to add
+	 */
+	public void addTileListener(TileListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener added with addTileListener()
+	 *
+	 * @param listener The listener to remove
+	 */
+	public void removeTileListener(TileListener listener) {
+		listeners.removeValue(listener, true);
+	}
+
+	/**
+	 * Drops the older half of the change log once it grows past the size of the board.
+	 */
+	private void trimChangeLog() {
+		if (changeLog.size <= width * height) {
+			return;
+		}
+		int cut = changeLog.size / 2;
+		changeLogStart = changeLogVersions.get(cut);
+		changeLog.removeRange(0, cut - 1);
+		changeLogVersions.removeRange(0, cut - 1);
+	}
+
+	/**
+	 * Appends every tile that changed walkability after the given walk version
+	 *
+	 * A tile that changed several times may appear more than once. If the log no
+	 * longer reaches back that far, nothing is appended and false is returned.
+	 *
+	 * @param version The walk version to look back to
+	 * @param out The list to append flat tile indices to
+	 *
+	 * @return false if the changes are no longer known
+	 */
+	public boolean getChangesSince(int version, IntArray out) {
+		if (version < changeLogStart) {
+			return false;
+		}
+		for (int ii = changeLog.size - 1; ii >= 0 && changeLogVersions.get(ii) > version; ii--) {
+			out.add(changeLog.get(ii));
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the walk version in which a tile last changed walkability
+	 *
+	 * A path checked at version v is still good as long as none of its tiles have a
+	 * version greater than v.  A tile in a chunk that was never written to reports
+	 * the latest change of any tile in the chunk.
+	 *
+	 * @param index The flat index of the tile
+	 *
+	 * @return the walk version in which the tile last changed
+	 */
+	public int getTileVersion(int index) {
+		int x = tileX(index);
+		int y = tileY(index);
+		Chunk chunk = chunks[chunkIndex(x, y)];
+		return chunk == null ? chunkVersions[chunkIndex(x, y)] : chunk.tileVersions[chunkSlot(x, y)];
+	}
+
+	/**
+	 * Returns the connected component of a tile
+	 *
+	 * Two walkable tiles have the same component exactly when a guard can walk from
+	 * one to the other.  Components are as of the last call to refreshWalkable().
+	 *
+	 * @param x The x index for the Tile cell
+	 * @param y The y index for the Tile cell
+	 *
+	 * @return the component of the tile, or -1 if it is not walkable
+	 */
+	public int getComponent(int x, int y) {
+		if (!inBounds(x, y) || components[tileIndex(x, y)] < 0) {
+			return -1;
+		}
+		return findComponent(components[tileIndex(x, y)]);
+	}
+
+	/**
+	 * Returns false if a guard at (x0,y0) certainly cannot walk to (x1,y1)
+	 *
+	 * A guard standing on a tile that is not walkable (e.g. a door closed on it)
+	 * can still step off onto any walkable neighbor.
+	 *
+	 * @return false if no walking route exists
+	 */
+	public boolean canReach(int x0, int y0, int x1, int y1) {
+		int goal = getComponent(x1, y1);
+		if (goal < 0) {
+			return false;
+		}
+		if (getComponent(x0, y0) >= 0) {
+			return getComponent(x0, y0) == goal;
+		}
+		return getComponent(x0+1, y0) == goal || getComponent(x0-1, y0) == goal
+				|| getComponent(x0, y0+1) == goal || getComponent(x0, y0-1) == goal;
+	}
+
+	/**
+	 * Updates the component labels for the changes logged since index first.
+	 *
+	 * Opened tiles merge the components around them.  Blocked tiles may split a
+	 * component, so every region next to one is flooded with a fresh label.
+	 */
+	private void updateComponents(int first) {
+		int count = changeLog.size - first;
+		if (count > width * height / 8 || componentCount + 5 * count >= 2 * width * height) {
+			relabelComponents();
+			return;
+		}
+		for (int ii = first; ii < changeLog.size; ii++) {
+			components[changeLog.get(ii)] = -1;
+		}
+		for (int ii = first; ii < changeLog.size; ii++) {
+			int index = changeLog.get(ii);
+			if (getBit(walkCacheBits, index)) {
+				int x = tileX(index);
+				int y = tileY(index);
+				int label = newComponent();
+				components[index] = label;
+				mergeComponent(label, x+1, y);
+				mergeComponent(label, x-1, y);
+				mergeComponent(label, x, y+1);
+				mergeComponent(label, x, y-1);
+			}
+		}
+		floodStart = componentCount;
+		for (int ii = first; ii < changeLog.size; ii++) {
+			int index = changeLog.get(ii);
+			if (!getBit(walkCacheBits, index)) {
+				int x = tileX(index);
+				int y = tileY(index);
+				floodComponent(x+1, y);
+				floodComponent(x-1, y);
+				floodComponent(x, y+1);
+				floodComponent(x, y-1);
+			}
+		}
+	}
+
+	/**
+	 * Relabels every walkable tile from scratch.
+	 */
+	private void relabelComponents() {
+		Arrays.fill(components, -1);
+		componentCount = 0;
+		floodStart = 0;
+		for (int ii = 0; ii < components.length; ii++) {
+			if (getBit(walkCacheBits, ii)) {
+				floodComponent(tileX(ii), tileY(ii));
+			}
+		}
+	}
+
+	/**
+	 * Gives the region containing (x,y) a fresh label, unless it was flooded this pass.
+	 */
+	private void floodComponent(int x, int y) {
+		if (!inBounds(x, y) || !getBit(walkCacheBits, tileIndex(x, y)) || components[tileIndex(x, y)] >= floodStart) {
+			return;
+		}
+		int label = newComponent();
+		floodQueue.clear();
+		floodHead = 0;
+		floodVisit(label, x, y);
+		while (floodHead < floodQueue.size) {
+			int index = floodQueue.get(floodHead++);
+			int tx = tileX(index);
+			int ty = tileY(index);
+			floodVisit(label, tx+1, ty);
+			floodVisit(label, tx-1, ty);
+			floodVisit(label, tx, ty+1);
+			floodVisit(label, tx, ty-1);
+			// Drop the visited front of the queue, so it only holds the frontier
+			if (floodHead > CHUNK_SIZE * CHUNK_SIZE && 2 * floodHead > floodQueue.size) {
+				floodQueue.removeRange(0, floodHead - 1);
+				floodHead = 0;
+			}
+		}
+	}
+
+	/**
+	 * Labels and queues (x,y) for the current flood if it is walkable and not yet flooded.
+	 */
+	private void floodVisit(int label, int x, int y) {
+		if (inBounds(x, y)) {
+			int index = tileIndex(x, y);
+			if (getBit(walkCacheBits, index) && components[index] < floodStart) {
+				components[index] = label;
+				floodQueue.add(index);
+			}
+		}
+	}
+
+	/**
+	 * Joins the component of (x,y), if it has one, to the given label.
+	 */
+	private void mergeComponent(int label, int x, int y) {
+		if (!inBounds(x, y) || components[tileIndex(x, y)] < 0) {
+			return;
+		}
+		int root = findComponent(components[tileIndex(x, y)]);
+		int other = findComponent(label);
+		if (root != other) {
+			componentParents[root] = other;
+		}
+	}
+
+	/**
+	 * Points every component label straight at its representative.
+	 *
+	 * Afterwards getComponent() and canReach() only read the board until its walkable
+	 * layout next changes, so other threads may call them while it does not change.
+	 */
+	public void flattenComponents() {
+		for (int label = 0; label < componentCount; label++) {
+			findComponent(label);
+		}
+	}
+
+	/**
+	 * Returns a fresh component label.
+	 */
+	private int newComponent() {
+		int label = componentCount++;
+		if (label == componentParents.length) {
+			componentParents = Arrays.copyOf(componentParents, 2 * label);
+		}
+		componentParents[label] = label;
+		return label;
+	}
+
+	/**
+	 * Returns the representative label of a component, compressing the path to it.
+	 */
+	private int findComponent(int label) {
+		int root = label;
+		while (componentParents[root] != root) {
+			root = componentParents[root];
+		}
+		while (componentParents[label] != root) {
+			int next = componentParents[label];
+			componentParents[label] = root;
+			label = next;
+		}
+		return root;
+	}
+
+	/**
+	 * Returns the current walk version.
+	 *
+	 * This number changes whenever a tile becomes walkable or unwalkable.  Anything
+	 * cached from a pathfinding search is stale once this value changes.
+	 *
+	 * @return the current walk version.
+	 */
+	public int getWalkVersion() {
+		return walkVersion;
+	}
+
+	/**
+	 * Returns the flat index of the tile at (x,y)
+	 *
+	 * @param x The x index for the Tile cell
+	 * @param y The y index for the Tile cell
+	 *
+	 * @return the flat index of the tile at (x,y)
+	 */
+	public int tileIndex(int x, int y) {
+		return x * height + y;
+	}
+
+	/**
+	 * Returns the x index of a flat tile index
+	 *
+	 * @param index The flat tile index
+	 *
+	 * @return the x index of a flat tile index
+	 */
+	public int tileX(int index) {
+		return index / height;
+	}
+
+	/**
+	 * Returns the y index of a flat tile index
+	 *
+	 * @param index The flat tile index
+	 *
+	 * @return the y index of a flat tile index
+	 */
+	public int tileY(int index) {
+		return index % height;
 	}
 
 	// GAME LOOP
@@ -291,7 +952,7 @@ public class Board {
 	public void update() {
 		for(int i=height-1;i>=0;i--){
 			for(int j=0;j<width;j++){
-				System.out.print(getTileState(j,i).occupant);
+				System.out.print(getOccupant(j,i));
 			}
 			System.out.println();
 		}
@@ -305,46 +966,79 @@ public class Board {
 	 * This method draws all of the tiles in this board. It should be the first drawing
 	 * pass in the GameEngine.
 	 *
+	 * The tiles are baked into a sprite cache the first time they are drawn, and again
+	 * only after they change, so the whole floor is a single draw call.
+	 *
 	 * @param canvas the drawing context
 	 */
 	public void draw(ObstacleCanvas canvas) {
-		for (int x = 0; x < width; x++) {
-			for (int y = 0; y < height; y++) {
-				drawTile(x, y, canvas);
-			}
+		if (floorDirty) {
+			buildFloor();
 		}
+		canvas.draw(floorCache, floorId);
 	}
 	
 	/**
-	 * Draws the individual tile at position (x,y). 
+	 * Bakes every valid tile into the floor cache.
+	 *
+	 * Fallen tiles and chunks that are all invalid are left out.
+	 */
+	private void buildFloor() {
+		int count = 0;
+		for (short valid : chunkValidCounts) {
+			count += valid;
+		}
+		// A cache cannot grow, so a bigger floor needs a new one
+		if (floorCache == null || count > floorCapacity) {
+			if (floorCache != null) {
+				floorCache.dispose();
+			}
+			floorCapacity = Math.max(count, 1);
+			floorCache = new SpriteCache(floorCapacity, false);
+		}
+		floorCache.clear();
+		floorCache.beginCache();
+		for (int c = 0; c < chunks.length; c++) {
+			if (chunkValidCounts[c] == 0) {
+				continue;
+			}
+			int x0 = (c / chunksHigh) * CHUNK_SIZE;
+			int y0 = (c % chunksHigh) * CHUNK_SIZE;
+			int x1 = Math.min(x0 + CHUNK_SIZE, width);
+			int y1 = Math.min(y0 + CHUNK_SIZE, height);
+			for (int x = x0; x < x1; x++) {
+				for (int y = y0; y < y1; y++) {
+					addTile(x, y);
+				}
+			}
+		}
+		floorId = floorCache.endCache();
+		floorDirty = false;
+	}
+
+	/**
+	 * Adds the individual tile at position (x,y) to the floor cache.
 	 *
-	 * Fallen tiles are not drawn.
+	 * Fallen tiles are not added.
 	 *
 	 * @param x The x index for the Tile cell
 	 * @param y The y index for the Tile cell
 	 */
-	private void drawTile(int x, int y, ObstacleCanvas canvas) {
-		TileState tile = getTileState(x, y);
-		
+	private void addTile(int x, int y) {
+		int index = tileIndex(x, y);
+
 		// Don't draw tile if it's fallen off the screen
-		if (!tile.isValid) {
+		if (!getBit(validBits, index)) {
 			return;
 		}
 
-		// Compute drawing coordinates
-		float sx = boardToScreen(x);
-		float sy = boardToScreen(y);
-
-		// Draw
-		//This one does the same thing as the line below
-		//canvas.draw(tileTexture, Color.WHITE, tileTexture.getRegionWidth()/2, tileTexture.getRegionHeight()/2,
-		//		TILE_WIDTH * (x + 0.5f), TILE_WIDTH * (y + 0.5f), 0, 1.0f, 1.0f);
-		Color filter;
-
-		filter = Color.WHITE;
-
-		canvas.draw(tileTextures[tile.textureIndex], filter, 0, 0,
-				TILE_WIDTH * x, TILE_WIDTH * y, 0, TILE_WIDTH/tileTexture.getRegionWidth(), TILE_WIDTH/tileTexture.getRegionHeight());
+		Chunk chunk = chunks[chunkIndex(x, y)];
+		TextureRegion region = tileTextures[chunk == null ? 0 : chunk.textureIndices[chunkSlot(x, y)]];
+		// Same scale as drawing the region with canvas.draw()
+		float sx = TILE_WIDTH/tileTexture.getRegionWidth();
+		float sy = TILE_WIDTH/tileTexture.getRegionHeight();
+		floorCache.add(region, TILE_WIDTH * x, TILE_WIDTH * y,
+				region.getRegionWidth() * sx, region.getRegionHeight() * sy);
 	}
 
 	// CONVERSION METHODS (OPTIONAL)
@@ -455,93 +1149,12 @@ public class Board {
 	}
 
 	/**
-	 * Returns true if the tile has been visited.
-	 *
-	 * A tile position that is not on the board will always evaluate to false.
-	 *
-	 * @param x The x index for the Tile cell
-	 * @param y The y index for the Tile cell
-	 *
-	 * @return true if the tile has been visited.
-	 */
-	public boolean isVisited(int x, int y) {
-		if (!inBounds(x, y)) {
-			return false;
-		}
-
-		return getTileState(x, y).visited;
-	}
-	
-	/**
-	 * Marks a tile as visited.
-	 *
-	 * A marked tile will return true for isVisited(), until a call to clearMarks().
-	 *
-	 * @param x The x index for the Tile cell
-	 * @param y The y index for the Tile cell
-	 */
-	public void setVisited(int x, int y) {
-		if (!inBounds(x,y)) {
-			Gdx.app.error("Board", "Illegal tile "+x+","+y, new IndexOutOfBoundsException());
-			return;
-		}
-		getTileState(x, y).visited = true;
-	}
-
-	/**
-	Returns the occupant of the tile
+	Returns the occupant of the tile; tiles off the board read as walls
 	 */
 	public int getOccupant(int x, int y) {
-		TileState tile = getTileState(x,y);
-		return tile.occupant;
-	}
-
-	/**
-	 * Returns true if the tile is a goal.
-	 *
-	 * A tile position that is not on the board will always evaluate to false.
-	 *
-	 * @param x The x index for the Tile cell
-	 * @param y The y index for the Tile cell
-	 *
-	 * @return true if the tile is a goal.
-	 */
-	public boolean isGoal(int x, int y) {
 		if (!inBounds(x, y)) {
-			return false;
-		}
-
-		return getTileState(x, y).goal;
-	}
-
-	/**
-	 * Marks a tile as a goal.
-	 *
-	 * A marked tile will return true for isGoal(), until a call to clearMarks().
-	 *
-	 * @param x The x index for the Tile cell
-	 * @param y The y index for the Tile cell
-	 */
-	public void setGoal(int x, int y) {
-		if (!inBounds(x,y)) {
-			Gdx.app.error("Board", "Illegal tile "+x+","+y, new IndexOutOfBoundsException());
-			return;
-		}
-		getTileState(x, y).goal = true;
-	}
-
-	/**
-	 * Clears all marks on the board.
-	 *
-	 * This method should be done at the beginning of any pathfinding round.
-	 */
-	public void clearMarks() {
-		for (int x = 0; x < width; x++) {
-			for (int y = 0; y < height; y++) {
-				TileState state = getTileState(x, y);
-				state.visited = false;
-				state.goal = false;
-			}
+			return 1;
 		}
+		return occupantAt(tileIndex(x, y));
 	}
-}
\ No newline at end of file
+}
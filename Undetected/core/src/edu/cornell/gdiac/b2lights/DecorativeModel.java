@@ -12,7 +12,7 @@ import edu.cornell.gdiac.physics.obstacle.*;
 
 import javax.xml.soap.Text;
 
-public class DecorativeModel extends BoxObstacle{
+public class DecorativeModel extends BoxObstacle implements StaticSprite {
     /** Collide Bit */
     public static final String COLLIDE_BIT = "0010";
     /** Exclude Bit */
@@ -167,6 +167,28 @@ public class DecorativeModel extends BoxObstacle{
         }
     }
 
+    /**
+     * Returns true if the decoration never animates, so it can be baked into a StaticLayer.
+     */
+    public boolean isStill() {
+        return filmstrip == null;
+    }
+
+    /**
+     * Adds the decoration to a sprite cache, where draw() would put it.
+     *
+     * @param cache Sprite cache being built
+     */
+    public void bake(SpriteCache cache) {
+        if (texture != null) {
+            // The canvas snaps positions to whole pixels, and mirrors about the left edge
+            float x = getX()*drawScale.x + (flip ? 1 : -1)*getWidth()/2*drawScale.x;
+            float y = getY()*drawScale.y-getHeight()/2*drawScale.y+offsetY;
+            cache.add(texture, (int)x, (int)y, 0, 0, texture.getRegionWidth(), texture.getRegionHeight(),
+                    flip ? -1 : 1, 1, 0);
+        }
+    }
+
     /**
      * Draws the physics object.
      *
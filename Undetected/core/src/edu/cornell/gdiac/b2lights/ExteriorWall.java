@@ -28,7 +28,7 @@ public class ExteriorWall extends Obstacle{
         positions = new Array<Integer>();
     }
 
-    public class WallBlock extends BoxObstacle{
+    public class WallBlock extends BoxObstacle implements StaticSprite {
         /** 0:horiontal, 1:vertical, 2:left-bottom corner, 3: right-bottom corner, 4: left-top corner, 5: right-top corner */
         public int walltype = 0;
 
@@ -87,6 +87,19 @@ public class ExteriorWall extends Obstacle{
             }
         }
 
+        /**
+         * Adds the wall to a sprite cache, where draw() would put it.
+         *
+         * @param cache Sprite cache being built
+         */
+        public void bake(SpriteCache cache) {
+            if (texture != null) {
+                // Walls never rotate, and the canvas snaps positions to whole pixels
+                cache.add(texture, (int)(getX()*drawScale.x) + (int)-origin.x,
+                        (int)(getY()*drawScale.y-getHeight()/2*drawScale.y) + (int)-origin.y);
+            }
+        }
+
     }
 
     public void initialize(JsonValue json){
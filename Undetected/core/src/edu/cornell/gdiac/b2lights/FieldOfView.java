@@ -0,0 +1,280 @@
+package edu.cornell.gdiac.b2lights;
+
+import com.badlogic.gdx.utils.IntArray;
+
+import java.util.Arrays;
+
+/**
+ * The tiles one guard or camera can see, found by recursive shadowcasting over a Board.
+ *
+ * A tile is seen if it lies in the viewer's cone (within range, and within the cone
+ * angle of its direction) or within its near radius, and no opaque tile hides it.
+ * Opaque tiles can be seen themselves but hide what is behind them.  The tiles are kept
+ * as a bitset over the square of tiles around the viewer, so a lookup is one bit test.
+ *
+ * The set is only recomputed when the viewer changes tile or turns by a degree or more,
+ * or when a tile near it becomes or stops being opaque.  The last few sets are kept, so
+ * a camera sweeping over a fixed table of angles, or a guard turning back and forth,
+ * stops recomputing once it has seen each angle.
+ */
+public class FieldOfView implements Board.TileListener {
+    /** Number of earlier sets kept */
+    private static final int CACHE_SIZE = 8;
+    /** How far each octant steps along x and y, as {xx, xy, yx, yy} */
+    private static final int[][] OCTANTS = {
+        {1, 0, 0, 1}, {0, 1, 1, 0}, {0, -1, 1, 0}, {-1, 0, 0, 1},
+        {-1, 0, 0, -1}, {0, -1, -1, 0}, {0, 1, -1, 0}, {1, 0, 0, -1}
+    };
+
+    /** One computed set and what it was computed for */
+    private static class View {
+        int x;
+        int y;
+        int angle;
+        float range;
+        float cone;
+        float near;
+        int radius;
+        long[] bits;
+        /** When this view was last used, for eviction */
+        int lastUsed;
+    }
+
+    /** Board */
+    private Board board;
+    /** Occupant types that block sight, as a bitmask */
+    private int opaque;
+    /** Computed views, most recent uses kept */
+    private View[] cache;
+    /** The view in effect, or null before the first update */
+    private View current;
+    /** Counter for least recently used eviction */
+    private int clock;
+    /** Number of times the set was recomputed, rather than found in the cache */
+    private int recomputes;
+
+    /** Scratch state for the shadowcasting pass */
+    private View casting;
+    private float dirX;
+    private float dirY;
+    private float cosCone;
+
+    /** Creates an empty view over the board; it listens for tiles changing opacity
+     *
+     *  @param opaque bitmask of the occupant types that block sight
+     */
+    public FieldOfView(Board board, int opaque) {
+        this.board = board;
+        this.opaque = opaque;
+        cache = new View[CACHE_SIZE];
+        board.addTileListener(this);
+    }
+
+    /** Stops listening to the board */
+    public void dispose() {
+        board.removeTileListener(this);
+    }
+
+    /** Returns the number of times the set was recomputed rather than reused */
+    public int getRecomputes() {
+        return recomputes;
+    }
+
+    /** Brings the set up to date for a viewer at the given position, recomputing it only if needed
+     *
+     *  @param x        viewer x position, in physics coordinates
+     *  @param y        viewer y position, in physics coordinates
+     *  @param dirX     x direction the viewer faces (need not be normalized)
+     *  @param dirY     y direction the viewer faces
+     *  @param range    how far the cone reaches, in tiles
+     *  @param cone     half angle of the cone, in degrees
+     *  @param near     radius seen in every direction, in tiles
+     */
+    public void update(float x, float y, float dirX, float dirY, float range, float cone, float near) {
+        int tx = (int)Math.floor(x);
+        int ty = (int)Math.floor(y);
+        int angle = Math.round((float)Math.toDegrees(Math.atan2(dirY, dirX)));
+        clock++;
+        if (current != null && matches(current, tx, ty, angle, range, cone, near)) {
+            current.lastUsed = clock;
+            return;
+        }
+        View oldest = null;
+        for (int i = 0; i < cache.length; i++) {
+            View view = cache[i];
+            if (view == null) {
+                view = new View();
+                cache[i] = view;
+            } else if (view.bits != null && matches(view, tx, ty, angle, range, cone, near)) {
+                current = view;
+                view.lastUsed = clock;
+                return;
+            }
+            // Reuse an empty slot first, then the least recently used one
+            if (oldest == null || oldest.bits != null && (view.bits == null || view.lastUsed < oldest.lastUsed)) {
+                oldest = view;
+            }
+        }
+        compute(oldest, tx, ty, angle, dirX, dirY, range, cone, near);
+        oldest.lastUsed = clock;
+        current = oldest;
+    }
+
+    /** Forgets the set, so the viewer sees nothing until the next update */
+    public void clear() {
+        current = null;
+    }
+
+    /** Returns true if the viewer can see tile (x, y) */
+    public boolean isVisible(int x, int y) {
+        View view = current;
+        if (view == null) {
+            return false;
+        }
+        int dx = x - view.x + view.radius;
+        int dy = y - view.y + view.radius;
+        int span = 2 * view.radius + 1;
+        if (dx < 0 || dy < 0 || dx >= span || dy >= span) {
+            return false;
+        }
+        int bit = dx * span + dy;
+        return (view.bits[bit >> 6] & (1L << bit)) != 0;
+    }
+
+    /** Returns true if the viewer can see the tile holding the point (in physics coordinates) */
+    public boolean isVisible(float x, float y) {
+        return isVisible((int)Math.floor(x), (int)Math.floor(y));
+    }
+
+    @Override
+    public void tilesChanged(Board board, int step, IntArray tiles, IntArray oldOccupants, IntArray newOccupants) {
+        for (int i = 0; i < tiles.size; i++) {
+            if (isOpaque(oldOccupants.get(i)) == isOpaque(newOccupants.get(i))) {
+                continue;
+            }
+            int x = board.tileX(tiles.get(i));
+            int y = board.tileY(tiles.get(i));
+            for (int j = 0; j < cache.length; j++) {
+                View view = cache[j];
+                if (view != null && view.bits != null
+                        && Math.abs(x - view.x) <= view.radius && Math.abs(y - view.y) <= view.radius) {
+                    view.bits = null;
+                    if (view == current) {
+                        // Keep the key so the next update recomputes in place
+                        current = null;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Returns true if the view was computed for the given viewer */
+    private static boolean matches(View view, int x, int y, int angle, float range, float cone, float near) {
+        return view.bits != null && view.x == x && view.y == y && view.angle == angle
+                && view.range == range && view.cone == cone && view.near == near;
+    }
+
+    /** Returns true if an occupant type blocks sight */
+    private boolean isOpaque(int occupant) {
+        return occupant >= 0 && occupant < 32 && ((opaque >> occupant) & 1) != 0;
+    }
+
+    /** Returns true if tile (x, y) blocks sight */
+    private boolean isOpaque(int x, int y) {
+        return isOpaque(board.getOccupant(x, y));
+    }
+
+    /** Computes the set into view by shadowcasting each octant from the viewer's tile */
+    private void compute(View view, int x, int y, int angle, float dirX, float dirY,
+                         float range, float cone, float near) {
+        recomputes++;
+        view.x = x;
+        view.y = y;
+        view.angle = angle;
+        view.range = range;
+        view.cone = cone;
+        view.near = near;
+        view.radius = (int)Math.ceil(Math.max(range, near));
+        int span = 2 * view.radius + 1;
+        int words = (span * span + 63) / 64;
+        if (view.bits == null || view.bits.length != words) {
+            view.bits = new long[words];
+        } else {
+            Arrays.fill(view.bits, 0);
+        }
+
+        float length = (float)Math.sqrt(dirX * dirX + dirY * dirY);
+        this.dirX = length == 0 ? 1 : dirX / length;
+        this.dirY = length == 0 ? 0 : dirY / length;
+        cosCone = (float)Math.cos(Math.toRadians(Math.min(cone, 180)));
+        casting = view;
+        mark(0, 0);
+        for (int[] octant : OCTANTS) {
+            castLight(1, 1.0f, 0.0f, octant[0], octant[1], octant[2], octant[3]);
+        }
+        casting = null;
+    }
+
+    /** Marks the tile at offset (dx, dy) from the viewer as seen, if it is in view */
+    private void mark(int dx, int dy) {
+        View view = casting;
+        float d2 = dx * dx + dy * dy;
+        boolean seen = d2 <= view.near * view.near;
+        if (!seen && d2 <= view.range * view.range) {
+            // Inside the cone if the angle to the tile is at most the cone angle
+            float dot = dx * dirX + dy * dirY;
+            seen = d2 == 0 || dot >= cosCone * (float)Math.sqrt(d2);
+        }
+        if (seen) {
+            int span = 2 * view.radius + 1;
+            int bit = (dx + view.radius) * span + (dy + view.radius);
+            view.bits[bit >> 6] |= 1L << bit;
+        }
+    }
+
+    /** Scans one octant from row outward, between the start and end slopes
+     *
+     *  This is the classic recursive shadowcasting pass: an opaque tile narrows the
+     *  slopes still lit, and a run of opaque tiles starts a new scan for the part above it.
+     */
+    private void castLight(int row, float start, float end, int xx, int xy, int yx, int yy) {
+        if (start < end) {
+            return;
+        }
+        int radius = casting.radius;
+        float newStart = 0;
+        for (int j = row; j <= radius; j++) {
+            boolean blocked = false;
+            for (int dx = -j, dy = -j; dx <= 0; dx++) {
+                float leftSlope = (dx - 0.5f) / (dy + 0.5f);
+                float rightSlope = (dx + 0.5f) / (dy - 0.5f);
+                if (start < rightSlope) {
+                    continue;
+                } else if (end > leftSlope) {
+                    break;
+                }
+                int ox = dx * xx + dy * xy;
+                int oy = dx * yx + dy * yy;
+                if (ox * ox + oy * oy <= radius * radius) {
+                    mark(ox, oy);
+                }
+                boolean wall = isOpaque(casting.x + ox, casting.y + oy);
+                if (blocked) {
+                    if (wall) {
+                        newStart = rightSlope;
+                    } else {
+                        blocked = false;
+                        start = newStart;
+                    }
+                } else if (wall && j < radius) {
+                    blocked = true;
+                    castLight(j + 1, start, leftSlope, xx, xy, yx, yy);
+                    newStart = rightSlope;
+                }
+            }
+            if (blocked) {
+                return;
+            }
+        }
+    }
+}
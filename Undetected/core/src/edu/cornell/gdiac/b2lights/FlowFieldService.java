@@ -0,0 +1,371 @@
+package edu.cornell.gdiac.b2lights;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntMap;
+
+import java.util.Arrays;
+
+/**
+ * Shared distance fields for guard navigation.
+ *
+ * Guards heading to the same tile (a patrol waypoint, a camera, the objective path)
+ * all need the same answer to "which neighbor is closer to the goal".  Instead of
+ * every guard searching from its own position every step, we search once outward
+ * from the goal tile and store the distance of every tile that can reach it.  Any
+ * guard can then trace its route by stepping to the closer neighbor each time.
+ *
+ * Fields are cached per goal tile and brought up to date lazily the next time they
+ * are read after the walkable layout of the board changes.  In incremental mode a
+ * field is repaired from the board's change log, LPA*-style: only the tiles whose
+ * distance depended on a blocked tile, plus whatever a newly opened tile shortens,
+ * are relabeled.  A switch toggling a couple of doors then costs a small fraction
+ * of a full rebuild for every field that guards are using.
+ */
+public class FlowFieldService {
+    /** Distance stored for tiles that cannot reach the goal */
+    public static final int UNREACHABLE = -1;
+    /** Default maximum number of goal fields kept at once */
+    public static final int MAX_FIELDS = 32;
+    /** Fraction of the board that may change before a repair falls back to a rebuild */
+    private static final int MAX_REPAIR_DIVISOR = 8;
+
+    /** Distance field toward a single goal tile */
+    private static class FlowField {
+        /** Flat index of the goal tile */
+        public int goal;
+        /** Board walk version this field was built against */
+        public int version;
+        /** Clock value of the last lookup (for eviction) */
+        public int lastUsed;
+        /** Distance to the goal for every tile, or UNREACHABLE */
+        public int[] dist;
+    }
+
+    /** Board */
+    private Board board;
+
+    /** Cached fields, keyed by flat goal index */
+    private IntMap<FlowField> fields;
+    /** Maximum number of fields kept at once */
+    private int capacity;
+
+    /** Scratch queue for building fields */
+    private int[] queue;
+    /** Scratch ring queue for propagating repaired distances */
+    private int[] pending;
+    /** Whether each tile is currently in the pending queue */
+    private boolean[] queued;
+    /** Repair pass in which each tile was invalidated */
+    private int[] invalid;
+    /** Current repair pass */
+    private int repairPass;
+    /** Scratch list of changed tiles */
+    private IntArray changes;
+
+    /** Whether fields are repaired in place instead of rebuilt */
+    private boolean incremental;
+
+    /** Lookup counter used for least-recently-used eviction */
+    private int clock;
+
+    /** Creates a flow field service for the given board, keeping up to MAX_FIELDS fields */
+    public FlowFieldService(Board board) {
+        this(board, MAX_FIELDS);
+    }
+
+    /** Creates a flow field service for the given board, keeping up to capacity fields */
+    public FlowFieldService(Board board, int capacity) {
+        this.board = board;
+        this.capacity = capacity;
+        fields = new IntMap<>();
+        queue = new int[board.getWidth() * board.getHeight()];
+        pending = new int[queue.length];
+        queued = new boolean[queue.length];
+        invalid = new int[queue.length];
+        changes = new IntArray();
+        clock = 0;
+        incremental = true;
+    }
+
+    /** Sets whether fields are repaired incrementally when the board changes */
+    public void setIncremental(boolean value) {
+        incremental = value;
+    }
+
+    /** Returns true if fields are repaired incrementally when the board changes */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /** Follows the field from (x,y) to the goal tile, appending every tile visited
+     *
+     *  The start tile is appended first and the goal tile last.  Returns false (and
+     *  leaves out partially filled) if the goal cannot be reached from (x,y).
+     */
+    public boolean tracePath(int x, int y, int goalx, int goaly, IntArray out) {
+        if (!board.canReach(x, y, goalx, goaly)) {
+            return false;
+        }
+        int[] dist = getField(goalx, goaly);
+        out.add(board.tileIndex(x, y));
+        while (x != goalx || y != goaly) {
+            int act = bestMove(dist, x, y);
+            if (act == 0) {
+                return false;
+            }
+            if (act == 1 || act == -1) {
+                x += act;
+            } else {
+                y += act / 2;
+            }
+            out.add(board.tileIndex(x, y));
+        }
+        return true;
+    }
+
+    /** Returns the move from (x,y) to its neighbor closest to the goal, or 0 if none can reach it */
+    private int bestMove(int[] dist, int x, int y) {
+        int act = 0;
+        int best = Integer.MAX_VALUE;
+        // Ties resolve in the same neighbor order that the search expands them
+        int d = distAt(dist, x+1, y);
+        if (d != UNREACHABLE && d < best) {
+            best = d;
+            act = 1;
+        }
+        d = distAt(dist, x-1, y);
+        if (d != UNREACHABLE && d < best) {
+            best = d;
+            act = -1;
+        }
+        d = distAt(dist, x, y+1);
+        if (d != UNREACHABLE && d < best) {
+            best = d;
+            act = 2;
+        }
+        d = distAt(dist, x, y-1);
+        if (d != UNREACHABLE && d < best) {
+            act = -2;
+        }
+        return act;
+    }
+
+    /** Returns the field distance at (x,y), or UNREACHABLE if the tile cannot be walked on */
+    private int distAt(int[] dist, int x, int y) {
+        if (!board.isWalkable(x, y)) {
+            return UNREACHABLE;
+        }
+        return dist[board.tileIndex(x, y)];
+    }
+
+    /** Returns an up-to-date distance field for the goal tile, building it if needed */
+    private int[] getField(int goalx, int goaly) {
+        int goal = board.tileIndex(goalx, goaly);
+        FlowField field = fields.get(goal);
+        if (field == null) {
+            field = obtainField();
+            field.goal = goal;
+            build(field);
+            fields.put(goal, field);
+        } else if (field.version != board.getWalkVersion()) {
+            if (!incremental || !repair(field)) {
+                build(field);
+            }
+        }
+        field.lastUsed = ++clock;
+        return field.dist;
+    }
+
+    /** Returns a fresh field, recycling the least recently used one if we are full */
+    private FlowField obtainField() {
+        if (fields.size < capacity) {
+            FlowField field = new FlowField();
+            field.dist = new int[queue.length];
+            return field;
+        }
+        FlowField oldest = null;
+        for (FlowField field : fields.values()) {
+            if (oldest == null || field.lastUsed < oldest.lastUsed) {
+                oldest = field;
+            }
+        }
+        fields.remove(oldest.goal);
+        return oldest;
+    }
+
+    /** Breadth-first search outward from the goal over walkable tiles */
+    private void build(FlowField field) {
+        int[] dist = field.dist;
+        Arrays.fill(dist, UNREACHABLE);
+        field.version = board.getWalkVersion();
+
+        int gx = board.tileX(field.goal);
+        int gy = board.tileY(field.goal);
+        if (!board.isWalkable(gx, gy)) {
+            return;
+        }
+
+        int head = 0;
+        int tail = 0;
+        dist[field.goal] = 0;
+        queue[tail++] = field.goal;
+        while (head < tail) {
+            int tile = queue[head++];
+            int x = board.tileX(tile);
+            int y = board.tileY(tile);
+            int d = dist[tile] + 1;
+            tail = expand(dist, x+1, y, d, tail);
+            tail = expand(dist, x-1, y, d, tail);
+            tail = expand(dist, x, y+1, d, tail);
+            tail = expand(dist, x, y-1, d, tail);
+        }
+    }
+
+    /** Labels (x,y) with distance d and queues it, if it is walkable and unlabeled */
+    private int expand(int[] dist, int x, int y, int d, int tail) {
+        if (board.isWalkable(x, y)) {
+            int tile = board.tileIndex(x, y);
+            if (dist[tile] == UNREACHABLE) {
+                dist[tile] = d;
+                queue[tail++] = tile;
+            }
+        }
+        return tail;
+    }
+
+    /** Updates a field for the tiles that changed since it was built
+     *
+     *  Returns false if the field has to be rebuilt instead: the changes are no
+     *  longer in the log, there are too many of them, or the goal itself changed.
+     */
+    private boolean repair(FlowField field) {
+        changes.clear();
+        if (!board.getChangesSince(field.version, changes) ||
+                changes.size > queue.length / MAX_REPAIR_DIVISOR) {
+            return false;
+        }
+        int[] dist = field.dist;
+        for (int i = 0; i < changes.size; i++) {
+            if (changes.get(i) == field.goal) {
+                return false;
+            }
+        }
+        field.version = board.getWalkVersion();
+        repairPass++;
+        if (repairPass == Integer.MAX_VALUE) {
+            Arrays.fill(invalid, 0);
+            repairPass = 1;
+        }
+
+        // Invalidate every tile whose shortest route ran through a blocked tile
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < changes.size; i++) {
+            int tile = changes.get(i);
+            if (dist[tile] != UNREACHABLE && invalid[tile] != repairPass &&
+                    !board.isWalkable(board.tileX(tile), board.tileY(tile))) {
+                invalid[tile] = repairPass;
+                queue[tail++] = tile;
+            }
+        }
+        while (head < tail) {
+            int tile = queue[head++];
+            int x = board.tileX(tile);
+            int y = board.tileY(tile);
+            int d = dist[tile] + 1;
+            tail = invalidate(dist, x+1, y, d, tail);
+            tail = invalidate(dist, x-1, y, d, tail);
+            tail = invalidate(dist, x, y+1, d, tail);
+            tail = invalidate(dist, x, y-1, d, tail);
+        }
+        for (int i = 0; i < tail; i++) {
+            dist[queue[i]] = UNREACHABLE;
+        }
+
+        // Reseed invalidated and newly opened tiles from their labeled neighbors
+        int count = 0;
+        for (int i = 0; i < tail; i++) {
+            count = reseed(dist, queue[i], count);
+        }
+        for (int i = 0; i < changes.size; i++) {
+            int tile = changes.get(i);
+            if (dist[tile] == UNREACHABLE) {
+                count = reseed(dist, tile, count);
+            }
+        }
+
+        // Propagate shorter distances until nothing improves
+        head = 0;
+        while (count > 0) {
+            int tile = pending[head];
+            head = (head + 1) % pending.length;
+            count--;
+            queued[tile] = false;
+            int x = board.tileX(tile);
+            int y = board.tileY(tile);
+            int d = dist[tile] + 1;
+            count = relax(dist, x+1, y, d, head, count);
+            count = relax(dist, x-1, y, d, head, count);
+            count = relax(dist, x, y+1, d, head, count);
+            count = relax(dist, x, y-1, d, head, count);
+        }
+        return true;
+    }
+
+    /** Invalidates (x,y) if its distance is d, since it may have depended on the tile before it */
+    private int invalidate(int[] dist, int x, int y, int d, int tail) {
+        if (board.inBounds(x, y)) {
+            int tile = board.tileIndex(x, y);
+            if (dist[tile] == d && invalid[tile] != repairPass) {
+                invalid[tile] = repairPass;
+                queue[tail++] = tile;
+            }
+        }
+        return tail;
+    }
+
+    /** Labels a walkable tile from its best labeled neighbor and queues it for propagation */
+    private int reseed(int[] dist, int tile, int count) {
+        int x = board.tileX(tile);
+        int y = board.tileY(tile);
+        if (!board.isWalkable(x, y)) {
+            return count;
+        }
+        int best = Integer.MAX_VALUE;
+        int d = distAt(dist, x+1, y);
+        if (d != UNREACHABLE && d < best) best = d;
+        d = distAt(dist, x-1, y);
+        if (d != UNREACHABLE && d < best) best = d;
+        d = distAt(dist, x, y+1);
+        if (d != UNREACHABLE && d < best) best = d;
+        d = distAt(dist, x, y-1);
+        if (d != UNREACHABLE && d < best) best = d;
+        if (best == Integer.MAX_VALUE || (dist[tile] != UNREACHABLE && dist[tile] <= best + 1)) {
+            return count;
+        }
+        dist[tile] = best + 1;
+        return enqueue(tile, 0, count);
+    }
+
+    /** Lowers the distance of the walkable tile (x,y) to d if that is shorter, queuing it */
+    private int relax(int[] dist, int x, int y, int d, int head, int count) {
+        if (board.isWalkable(x, y)) {
+            int tile = board.tileIndex(x, y);
+            if (dist[tile] == UNREACHABLE || d < dist[tile]) {
+                dist[tile] = d;
+                return enqueue(tile, head, count);
+            }
+        }
+        return count;
+    }
+
+    /** Adds a tile to the back of the pending ring, unless it is already waiting */
+    private int enqueue(int tile, int head, int count) {
+        if (queued[tile]) {
+            return count;
+        }
+        queued[tile] = true;
+        pending[(head + count) % pending.length] = tile;
+        return count + 1;
+    }
+}
@@ -35,12 +35,23 @@ public class GDXRoot extends Game implements ScreenListener {
 	private LoadingMode loading;
 	/** Player mode for the the game proper (CONTROLLER CLASS) */
 	private GameController controller;
+	/** Render quality of the lights, or null to pick one from the hardware */
+	private LightQuality quality;
 
 	/**
 	 * Creates a new game from the configuration settings.
 	 */
 	public GDXRoot() {}
 
+	/**
+	 * Creates a new game with the given light quality.
+	 *
+	 * @param quality	render quality of the lights, or null to pick one from the hardware
+	 */
+	public GDXRoot(LightQuality quality) {
+		this.quality = quality;
+	}
+
 	/**
 	 * Called when the Application is first created.
 	 *
@@ -48,6 +59,7 @@ public class GDXRoot extends Game implements ScreenListener {
 	 * the asynchronous loader for all other assets.
 	 */
 	public void create() {
+		LevelModel.setLightQuality(quality != null ? quality : LightQuality.probe());
 		canvas  = new ObstacleCanvas();
 		loading = new LoadingMode(canvas,1);
 
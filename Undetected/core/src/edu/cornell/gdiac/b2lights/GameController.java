@@ -205,6 +205,12 @@ public class GameController implements Screen, ContactListener {
 	private FileHandle currentFile = Gdx.files.internal("jsons/levelselect.json");
 	private String currentLevelString = "";
 	private FileHandle nextFile;
+	/** Level select doors near the player this frame */
+	private Array<DoorModel> nearDoors = new Array<DoorModel>();
+	/** Level select doors that are open, so they can be closed once the player leaves */
+	private Array<DoorModel> openDoors = new Array<DoorModel>();
+	/** Obstacle index openDoors was collected from; a new one means a new level */
+	private SpatialIndex openDoorsIndex;
 
 
 	/** Mark set to handle more sophisticated collision callbacks */
@@ -662,17 +668,35 @@ public class GameController implements Screen, ContactListener {
 		}
 
 		if (currentFile.equals(levelSelectFile)) {
-			ArrayList<DoorModel> doors = level.getDoors();
-			//TODO: CHANGE FOR RELEASE, TEMP
-//				for (DoorModel d : doors) {
-			for (int i = 0; i < 13; i++) {
-				DoorModel d = doors.get(i);
+			SpatialIndex index = level.getObstacleIndex();
+			if (openDoorsIndex != index) {
+				openDoorsIndex = index;
+				openDoors.clear();
+				for (DoorModel d : level.getDoors()) {
+					if (d.getOpen()) {
+						openDoors.add(d);
+					}
+				}
+			}
+			// Only doors within reach can be entered or opened
+			nearDoors.clear();
+			index.queryNear(level.getBoard().physicsToBoard(avatar.getX()),
+					level.getBoard().physicsToBoard(avatar.getY()), 4, DoorModel.class, nearDoors);
+			for (DoorModel d : nearDoors) {
 				if (d.getPosition().dst(avatar.getPosition())<0.3f){
 					nextFile = Gdx.files.internal("jsons/" + (d.getName()) + ".json");
 				} else if (d.getPosition().dst(avatar.getPosition())<3f&&!d.getOpen()){
 					d.switchState();
-				}else if(d.getPosition().dst(avatar.getPosition())>=3f&&d.getOpen()){
+					openDoors.add(d);
+				}
+			}
+			for (int i = openDoors.size - 1; i >= 0; i--) {
+				DoorModel d = openDoors.get(i);
+				if (!d.getOpen()) {
+					openDoors.removeIndex(i);
+				} else if (d.getPosition().dst(avatar.getPosition())>=3f) {
 					d.switchState();
+					openDoors.removeIndex(i);
 				}
 			}
 		}
@@ -722,9 +746,10 @@ public class GameController implements Screen, ContactListener {
 		// Turn the physics engine crank.
 		if(!showExit && !panToExit) {
 			level.update(dt);
-			if (lightController.detectedByGuards(guards)!=null && !failed && !avatar.isElectrocuted()) {
+			LightController.Detection detection = lightController.detect(guards, cameras);
+			if (detection.getGuard()!=null && !failed && !avatar.isElectrocuted()) {
 				avatar.electrocute();
-				guardCaught = lightController.detectedByGuards(guards);
+				guardCaught = detection.getGuard();
 				guardCaught.animateDirection((float)(Math.round(Math.atan2(
 						avatar.getX()-guardCaught.getX(),
 						avatar.getY()-guardCaught.getY()
@@ -741,13 +766,9 @@ public class GameController implements Screen, ContactListener {
 				guardCaught.setHasCaught(true);
 			}
 			else{
-				CameraModel cam = lightController.detectedByCameras(cameras);
+				CameraModel cam = detection.getCamera();
 				if(cam!=null) {
-					for (AIController ai : level.getControl()) {
-						if (ai.getGuard().sector == cam.sector && ai.lastCamera != cam) {
-							ai.setProtect(cam);
-						}
-					}
+					level.getSectors().alert(cam, cam.sector);
 				}
 			}
 			if(!avatar.getIsAlive() && !failed){setFailure(true);}
@@ -1326,9 +1347,7 @@ public class GameController implements Screen, ContactListener {
 				panToExit = true;
 				//exit.open();
 				//showExit = true;
-				for(GuardModel g: guards){
-					g.setAlarmed2(true);
-				}
+				level.getSectors().alarmAll();
 			}
 
 			// Check for win condition
@@ -1419,11 +1438,7 @@ public class GameController implements Screen, ContactListener {
 					if (boxes.contains(bd2) && bd2 instanceof MoveableBox) {
 						return;
 					}
-					for (AIController ai : level.getControl()) {
-						if (ai.getGuard().sector == ((Laser) bd1).sector) {
-							ai.setProtect(bd1);
-						}
-					}
+					level.getSectors().alert(bd1, ((Laser) bd1).sector);
 
 					if (music) {
 						currentSong.setVolume(DEFAULT_VOL/3);
@@ -1446,11 +1461,7 @@ public class GameController implements Screen, ContactListener {
 					if (boxes.contains(bd1) && bd1 instanceof MoveableBox) {
 						return;
 					}
-					for (AIController ai : level.getControl()) {
-						if (ai.getGuard().sector == ((Laser) bd2).sector) {
-							ai.setProtect(bd2);
-						}
-					}
+					level.getSectors().alert(bd2, ((Laser) bd2).sector);
 
 					if (music) {
 						currentSong.setVolume(DEFAULT_VOL/3);
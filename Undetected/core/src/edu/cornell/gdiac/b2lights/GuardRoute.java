@@ -0,0 +1,114 @@
+package edu.cornell.gdiac.b2lights;
+
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * A planned tile path that a guard follows one tile at a time.
+ *
+ * The route remembers the walk version it was last checked against.  When the board
+ * changes, only the tiles the guard has not reached yet are checked against their
+ * per-tile versions, so a door closing across the level does not force a replan.
+ */
+public class GuardRoute {
+    /** Goal value of a route that has not been planned */
+    public static final int NONE = -1;
+
+    /** Board */
+    private Board board;
+
+    /** Flat indices of the tiles on the route, from the start tile to the goal tile */
+    private IntArray tiles;
+    /** Position in tiles of the tile the guard is standing on */
+    private int cursor;
+    /** Flat index of the goal tile, or NONE */
+    private int goal;
+    /** Walk version the remaining tiles were last checked against */
+    private int checkedVersion;
+
+    /** Creates an empty route over the given board */
+    public GuardRoute(Board board) {
+        this.board = board;
+        tiles = new IntArray();
+        goal = NONE;
+    }
+
+    /** Forgets the current route */
+    public void clear() {
+        tiles.clear();
+        cursor = 0;
+        goal = NONE;
+    }
+
+    /** Starts a new route to the given goal, returning the (empty) tile list to fill */
+    public IntArray begin(int goal) {
+        clear();
+        this.goal = goal;
+        checkedVersion = board.getWalkVersion();
+        return tiles;
+    }
+
+    /** Returns true if the route leads to goal and no remaining tile has changed */
+    public boolean isValid(int goal) {
+        if (this.goal == NONE || this.goal != goal) {
+            return false;
+        }
+        int version = board.getWalkVersion();
+        if (version == checkedVersion) {
+            return true;
+        }
+        for (int i = cursor; i < tiles.size; i++) {
+            if (board.getTileVersion(tiles.get(i)) > checkedVersion) {
+                return false;
+            }
+        }
+        checkedVersion = version;
+        return true;
+    }
+
+    /** Copies another route, starting from its first tile */
+    public void set(GuardRoute other) {
+        tiles.clear();
+        tiles.addAll(other.tiles);
+        cursor = 0;
+        goal = other.goal;
+        checkedVersion = other.checkedVersion;
+    }
+
+    /** Returns true if the route leads to goal and has a next move from the given tile
+     *
+     *  Unlike nextMove, this does not advance along the route.
+     */
+    public boolean isFollowing(int goal, int tile) {
+        if (!isValid(goal)) {
+            return false;
+        }
+        if (cursor + 2 < tiles.size && tiles.get(cursor + 1) == tile) {
+            return true;
+        }
+        return cursor + 1 < tiles.size && tiles.get(cursor) == tile;
+    }
+
+    /** Returns the move from the given tile to the next tile on the route
+     *
+     *  Uses the same action codes as AIController.  Returns 0 if the tile is not
+     *  on the route where the guard should be, or if it is the goal.
+     */
+    public int nextMove(int tile) {
+        if (cursor + 1 < tiles.size && tiles.get(cursor + 1) == tile) {
+            cursor++;
+        } else if (cursor >= tiles.size || tiles.get(cursor) != tile) {
+            return 0;
+        }
+        if (cursor + 1 >= tiles.size) {
+            return 0;
+        }
+        int next = tiles.get(cursor + 1);
+        int dx = board.tileX(next) - board.tileX(tile);
+        int dy = board.tileY(next) - board.tileY(tile);
+        if (dx > 0) return 1;
+        if (dx < 0) return -1;
+        if (dy > 0) return 2;
+        if (dy < 0) return -2;
+        return 0;
+    }
+}
@@ -0,0 +1,514 @@
+package edu.cornell.gdiac.b2lights;
+
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Two-level route planner for long trips across large boards.
+ *
+ * The board is cut into square clusters.  Wherever two neighboring clusters share a
+ * walkable opening, the middle of that opening becomes a portal: a pair of tiles, one
+ * on each side.  Walking costs between the portals of a cluster are precomputed, so a
+ * long route is found by a short search over portals and then refined one cluster at
+ * a time.  Routes are close to, but not always exactly, the shortest.
+ *
+ * When tiles change, only the clusters they fall in (and the clusters sharing their
+ * borders) are rebuilt, the next time a route is planned.
+ *
+ * A planner can also be made to share the portal graph of another, keeping only its
+ * own search scratch space, so routes can be planned on several threads at once.
+ * Such a planner never rebuilds the graph; it plans nothing while the graph is out
+ * of date.
+ */
+public class HierarchicalPlanner {
+    /** Width and height of a cluster in tiles */
+    public static final int CLUSTER_SIZE = 16;
+    /** Cost of an edge that does not exist */
+    private static final int NO_EDGE = Integer.MAX_VALUE;
+
+    /** Distances from one source tile, limited to a single cluster */
+    private static class ClusterField {
+        /** Distance of each tile from the source */
+        public int[] dist;
+        /** Previous tile on the route from the source */
+        public int[] parent;
+        /** Pass in which each tile was reached */
+        public int[] stamp;
+        /** Current pass */
+        public int pass;
+
+        public ClusterField(int size) {
+            dist = new int[size];
+            parent = new int[size];
+            stamp = new int[size];
+        }
+
+        /** Returns true if the tile was reached in the current pass */
+        public boolean has(int tile) {
+            return stamp[tile] == pass;
+        }
+    }
+
+    /** Board */
+    private Board board;
+    /** Planner whose portal graph this one shares, or null if it owns its graph */
+    private HierarchicalPlanner source;
+
+    /** Number of clusters across */
+    private int clustersWide;
+    /** Number of clusters down */
+    private int clustersHigh;
+
+    /** Portal pairs (tile in cluster, tile in east neighbor) of each cluster */
+    private IntArray[] eastPortals;
+    /** Portal pairs (tile in cluster, tile in north neighbor) of each cluster */
+    private IntArray[] northPortals;
+    /** Portal tiles inside each cluster */
+    private IntArray[] portals;
+    /** Walking cost between each pair of portals in a cluster, row-major */
+    private int[][] intraCost;
+
+    /** Walk version the portal graph was built against, or -1 if it was never built */
+    private int version;
+    /** Whether each cluster needs its borders rebuilt */
+    private boolean[] dirty;
+    /** Scratch lists of dirty clusters and changed tiles */
+    private IntArray dirtyList;
+    private IntArray changes;
+
+    /** Scratch field for costs and refinement */
+    private ClusterField local;
+    /** Distances from the start tile */
+    private ClusterField startField;
+    /** Distances from the goal tile */
+    private ClusterField goalField;
+    /** Scratch queue for cluster floods */
+    private int[] queue;
+
+    /** Best known cost of each abstract node */
+    private int[] nodeCost;
+    /** Previous abstract node on the best known route */
+    private int[] nodeParent;
+    /** Search pass in which each node was reached */
+    private int[] nodeSeen;
+    /** Search pass in which each node was expanded */
+    private int[] nodeClosed;
+    /** Current search pass */
+    private int searchPass;
+    /** Open abstract nodes */
+    private IntArray open;
+    /** Scratch list for refined nodes and segments */
+    private IntArray nodes;
+    private IntArray segment;
+
+    /** Start, goal, and cluster of each of the current search */
+    private int start;
+    private int goal;
+    private int startCluster;
+    private int goalCluster;
+
+    /** Creates a planner for the given board */
+    public HierarchicalPlanner(Board board) {
+        this.board = board;
+        clustersWide = (board.getWidth() + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+        clustersHigh = (board.getHeight() + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+        int count = clustersWide * clustersHigh;
+        eastPortals = new IntArray[count];
+        northPortals = new IntArray[count];
+        portals = new IntArray[count];
+        intraCost = new int[count][];
+        for (int c = 0; c < count; c++) {
+            eastPortals[c] = new IntArray();
+            northPortals[c] = new IntArray();
+            portals[c] = new IntArray();
+            intraCost[c] = new int[0];
+        }
+        dirty = new boolean[count];
+        dirtyList = new IntArray();
+        changes = new IntArray();
+        version = -1;
+        allocateScratch();
+    }
+
+    /** Creates a planner that searches the portal graph of another
+     *
+     *  Only the other planner updates the graph, in refresh() or plan(), and it must
+     *  not do so while this one plans.
+     */
+    public HierarchicalPlanner(HierarchicalPlanner source) {
+        this.source = source;
+        board = source.board;
+        clustersWide = source.clustersWide;
+        clustersHigh = source.clustersHigh;
+        eastPortals = source.eastPortals;
+        northPortals = source.northPortals;
+        portals = source.portals;
+        intraCost = source.intraCost;
+        allocateScratch();
+    }
+
+    /** Allocates the search scratch space */
+    private void allocateScratch() {
+        int n = board.getWidth() * board.getHeight();
+        local = new ClusterField(n);
+        startField = new ClusterField(n);
+        goalField = new ClusterField(n);
+        queue = new int[CLUSTER_SIZE * CLUSTER_SIZE];
+        nodeCost = new int[n];
+        nodeParent = new int[n];
+        nodeSeen = new int[n];
+        nodeClosed = new int[n];
+        open = new IntArray();
+        nodes = new IntArray();
+        segment = new IntArray();
+    }
+
+    /** Plans a route from (startX,startY) to (goalX,goalY), appending every tile on it
+     *
+     *  The start tile is appended first and the goal tile last.  Returns false (and
+     *  leaves out partially filled) if no route was found.
+     */
+    public boolean plan(int startX, int startY, int goalX, int goalY, IntArray out) {
+        if (!board.canReach(startX, startY, goalX, goalY)) {
+            return false;
+        }
+        if (source == null) {
+            refresh();
+        } else if (source.version != board.getWalkVersion()) {
+            return false;
+        }
+        start = board.tileIndex(startX, startY);
+        goal = board.tileIndex(goalX, goalY);
+        startCluster = clusterOf(start);
+        goalCluster = clusterOf(goal);
+        flood(startField, start, startCluster);
+        flood(goalField, goal, goalCluster);
+        if (!search()) {
+            return false;
+        }
+
+        nodes.clear();
+        for (int node = goal; node != start; node = nodeParent[node]) {
+            nodes.add(node);
+        }
+        nodes.add(start);
+        nodes.reverse();
+
+        out.add(start);
+        for (int i = 1; i < nodes.size; i++) {
+            int from = nodes.get(i - 1);
+            int to = nodes.get(i);
+            if (clusterOf(from) != clusterOf(to)) {
+                out.add(to);
+            } else {
+                flood(local, from, clusterOf(from));
+                if (!local.has(to)) {
+                    return false;
+                }
+                segment.clear();
+                for (int tile = to; tile != from; tile = local.parent[tile]) {
+                    segment.add(tile);
+                }
+                for (int j = segment.size - 1; j >= 0; j--) {
+                    out.add(segment.get(j));
+                }
+            }
+        }
+        return true;
+    }
+
+    /** A* over the portal graph plus the start and goal tiles */
+    private boolean search() {
+        searchPass++;
+        open.clear();
+        nodeSeen[start] = searchPass;
+        nodeCost[start] = 0;
+        nodeParent[start] = start;
+        open.add(start);
+        while (open.size > 0) {
+            int best = 0;
+            int bestScore = Integer.MAX_VALUE;
+            for (int i = 0; i < open.size; i++) {
+                int node = open.get(i);
+                int score = nodeCost[node] + manDist(node, goal);
+                if (score < bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+            int node = open.removeIndex(best);
+            if (node == goal) {
+                return true;
+            }
+            nodeClosed[node] = searchPass;
+            expand(node);
+        }
+        return false;
+    }
+
+    /** Offers every abstract edge out of a node */
+    private void expand(int node) {
+        int cost = nodeCost[node];
+        int cluster = clusterOf(node);
+        if (cluster == goalCluster && goalField.has(node)) {
+            relax(node, goal, cost + goalField.dist[node]);
+        }
+        if (node == start) {
+            IntArray list = portals[cluster];
+            for (int i = 0; i < list.size; i++) {
+                int other = list.get(i);
+                if (startField.has(other)) {
+                    relax(node, other, cost + startField.dist[other]);
+                }
+            }
+        }
+
+        IntArray list = portals[cluster];
+        int index = list.indexOf(node);
+        if (index < 0) {
+            return;
+        }
+        int[] costs = intraCost[cluster];
+        for (int i = 0; i < list.size; i++) {
+            int step = costs[index * list.size + i];
+            if (i != index && step != NO_EDGE) {
+                relax(node, list.get(i), cost + step);
+            }
+        }
+
+        int cx = cluster % clustersWide;
+        int cy = cluster / clustersWide;
+        crossBorder(node, eastPortals[cluster], 0, cost);
+        crossBorder(node, northPortals[cluster], 0, cost);
+        if (cx > 0) {
+            crossBorder(node, eastPortals[cluster - 1], 1, cost);
+        }
+        if (cy > 0) {
+            crossBorder(node, northPortals[cluster - clustersWide], 1, cost);
+        }
+    }
+
+    /** Offers the step across every portal pair whose given side is node */
+    private void crossBorder(int node, IntArray pairs, int side, int cost) {
+        for (int i = 0; i < pairs.size; i += 2) {
+            if (pairs.get(i + side) == node) {
+                relax(node, pairs.get(i + 1 - side), cost + 1);
+            }
+        }
+    }
+
+    /** Records a route to node through from, if it is better than the known one */
+    private void relax(int from, int node, int cost) {
+        if (nodeClosed[node] == searchPass) {
+            return;
+        }
+        if (nodeSeen[node] != searchPass) {
+            nodeSeen[node] = searchPass;
+            open.add(node);
+        } else if (cost >= nodeCost[node]) {
+            return;
+        }
+        nodeCost[node] = cost;
+        nodeParent[node] = from;
+    }
+
+    /** Rebuilds the clusters touched by board changes since the last plan
+     *
+     *  This is done by plan() as needed; call it directly before planning on planners
+     *  that share this one's graph.  It does nothing on a planner that shares a graph.
+     */
+    public void refresh() {
+        if (source != null) {
+            return;
+        }
+        int current = board.getWalkVersion();
+        if (version == current) {
+            return;
+        }
+        changes.clear();
+        int count = clustersWide * clustersHigh;
+        dirtyList.clear();
+        if (version < 0 || !board.getChangesSince(version, changes)) {
+            for (int c = 0; c < count; c++) {
+                markDirty(c);
+            }
+        } else {
+            for (int i = 0; i < changes.size; i++) {
+                int tile = changes.get(i);
+                int x = board.tileX(tile);
+                int y = board.tileY(tile);
+                markDirty(clusterOf(tile));
+                // Tiles on a cluster edge also change the portals of the cluster across it
+                if (x % CLUSTER_SIZE == 0 && x > 0) markDirty(clusterOf(board.tileIndex(x - 1, y)));
+                if (x % CLUSTER_SIZE == CLUSTER_SIZE - 1 && x + 1 < board.getWidth()) markDirty(clusterOf(board.tileIndex(x + 1, y)));
+                if (y % CLUSTER_SIZE == 0 && y > 0) markDirty(clusterOf(board.tileIndex(x, y - 1)));
+                if (y % CLUSTER_SIZE == CLUSTER_SIZE - 1 && y + 1 < board.getHeight()) markDirty(clusterOf(board.tileIndex(x, y + 1)));
+            }
+        }
+        for (int i = 0; i < dirtyList.size; i++) {
+            int c = dirtyList.get(i);
+            buildEastBorder(c);
+            buildNorthBorder(c);
+            if (c % clustersWide > 0) buildEastBorder(c - 1);
+            if (c / clustersWide > 0) buildNorthBorder(c - clustersWide);
+        }
+        // Portals of the clusters next to a rebuilt border may have moved too
+        int size = dirtyList.size;
+        for (int i = 0; i < size; i++) {
+            int c = dirtyList.get(i);
+            int cx = c % clustersWide;
+            int cy = c / clustersWide;
+            if (cx > 0) markDirty(c - 1);
+            if (cx + 1 < clustersWide) markDirty(c + 1);
+            if (cy > 0) markDirty(c - clustersWide);
+            if (cy + 1 < clustersHigh) markDirty(c + clustersWide);
+        }
+        for (int i = 0; i < dirtyList.size; i++) {
+            int c = dirtyList.get(i);
+            buildCluster(c);
+            dirty[c] = false;
+        }
+        version = current;
+    }
+
+    /** Adds a cluster to the dirty list once */
+    private void markDirty(int cluster) {
+        if (!dirty[cluster]) {
+            dirty[cluster] = true;
+            dirtyList.add(cluster);
+        }
+    }
+
+    /** Finds the openings between a cluster and its east neighbor */
+    private void buildEastBorder(int cluster) {
+        IntArray pairs = eastPortals[cluster];
+        pairs.clear();
+        int x = (cluster % clustersWide + 1) * CLUSTER_SIZE - 1;
+        if (x + 1 >= board.getWidth()) {
+            return;
+        }
+        int y0 = (cluster / clustersWide) * CLUSTER_SIZE;
+        int y1 = Math.min(y0 + CLUSTER_SIZE, board.getHeight());
+        int run = -1;
+        for (int y = y0; y <= y1; y++) {
+            boolean gap = y < y1 && board.isWalkable(x, y) && board.isWalkable(x + 1, y);
+            if (gap && run < 0) {
+                run = y;
+            } else if (!gap && run >= 0) {
+                int mid = (run + y - 1) / 2;
+                pairs.add(board.tileIndex(x, mid));
+                pairs.add(board.tileIndex(x + 1, mid));
+                run = -1;
+            }
+        }
+    }
+
+    /** Finds the openings between a cluster and its north neighbor */
+    private void buildNorthBorder(int cluster) {
+        IntArray pairs = northPortals[cluster];
+        pairs.clear();
+        int y = (cluster / clustersWide + 1) * CLUSTER_SIZE - 1;
+        if (y + 1 >= board.getHeight()) {
+            return;
+        }
+        int x0 = (cluster % clustersWide) * CLUSTER_SIZE;
+        int x1 = Math.min(x0 + CLUSTER_SIZE, board.getWidth());
+        int run = -1;
+        for (int x = x0; x <= x1; x++) {
+            boolean gap = x < x1 && board.isWalkable(x, y) && board.isWalkable(x, y + 1);
+            if (gap && run < 0) {
+                run = x;
+            } else if (!gap && run >= 0) {
+                int mid = (run + x - 1) / 2;
+                pairs.add(board.tileIndex(mid, y));
+                pairs.add(board.tileIndex(mid, y + 1));
+                run = -1;
+            }
+        }
+    }
+
+    /** Collects the portals of a cluster and the walking costs between them */
+    private void buildCluster(int cluster) {
+        IntArray list = portals[cluster];
+        list.clear();
+        addPortals(list, eastPortals[cluster], 0);
+        addPortals(list, northPortals[cluster], 0);
+        if (cluster % clustersWide > 0) {
+            addPortals(list, eastPortals[cluster - 1], 1);
+        }
+        if (cluster / clustersWide > 0) {
+            addPortals(list, northPortals[cluster - clustersWide], 1);
+        }
+
+        int size = list.size;
+        if (intraCost[cluster].length < size * size) {
+            intraCost[cluster] = new int[size * size];
+        }
+        int[] costs = intraCost[cluster];
+        for (int i = 0; i < size; i++) {
+            flood(local, list.get(i), cluster);
+            for (int j = 0; j < size; j++) {
+                int tile = list.get(j);
+                costs[i * size + j] = local.has(tile) ? local.dist[tile] : NO_EDGE;
+            }
+        }
+    }
+
+    /** Adds the given side of every portal pair to a portal list, skipping repeats */
+    private void addPortals(IntArray list, IntArray pairs, int side) {
+        for (int i = side; i < pairs.size; i += 2) {
+            if (!list.contains(pairs.get(i))) {
+                list.add(pairs.get(i));
+            }
+        }
+    }
+
+    /** Breadth-first search from source over walkable tiles inside one cluster */
+    private void flood(ClusterField field, int source, int cluster) {
+        field.pass++;
+        int x0 = (cluster % clustersWide) * CLUSTER_SIZE;
+        int y0 = (cluster / clustersWide) * CLUSTER_SIZE;
+        int x1 = Math.min(x0 + CLUSTER_SIZE, board.getWidth());
+        int y1 = Math.min(y0 + CLUSTER_SIZE, board.getHeight());
+
+        int head = 0;
+        int tail = 0;
+        field.stamp[source] = field.pass;
+        field.dist[source] = 0;
+        field.parent[source] = source;
+        queue[tail++] = source;
+        while (head < tail) {
+            int tile = queue[head++];
+            int x = board.tileX(tile);
+            int y = board.tileY(tile);
+            int d = field.dist[tile] + 1;
+            if (x + 1 < x1) tail = visit(field, tile, x + 1, y, d, tail);
+            if (x - 1 >= x0) tail = visit(field, tile, x - 1, y, d, tail);
+            if (y + 1 < y1) tail = visit(field, tile, x, y + 1, d, tail);
+            if (y - 1 >= y0) tail = visit(field, tile, x, y - 1, d, tail);
+        }
+    }
+
+    /** Labels (x,y) from tile if it is walkable and not yet reached */
+    private int visit(ClusterField field, int from, int x, int y, int d, int tail) {
+        if (board.isWalkable(x, y)) {
+            int tile = board.tileIndex(x, y);
+            if (!field.has(tile)) {
+                field.stamp[tile] = field.pass;
+                field.dist[tile] = d;
+                field.parent[tile] = from;
+                queue[tail++] = tile;
+            }
+        }
+        return tail;
+    }
+
+    /** Returns the cluster containing a tile */
+    private int clusterOf(int tile) {
+        return (board.tileY(tile) / CLUSTER_SIZE) * clustersWide + board.tileX(tile) / CLUSTER_SIZE;
+    }
+
+    /** Returns the Manhattan Distance of two tiles */
+    private int manDist(int a, int b) {
+        return Math.abs(board.tileX(a) - board.tileX(b)) + Math.abs(board.tileY(a) - board.tileY(b));
+    }
+}
@@ -111,6 +111,32 @@ public class LevelModel {
 	protected Vector2 scale;
 	/** The Board */
 	protected Board board;
+	/** Shared guard navigation fields over the board */
+	protected FlowFieldService flowFields;
+	/** Shared planner for long guard routes */
+	protected HierarchicalPlanner planner;
+	/** Rations guard planning time per step */
+	protected AIScheduler scheduler;
+	/** Tile and occupant type (tile * OCCUPANT_TYPES + type) each moving object last marked on the board */
+	private ObjectIntMap<Obstacle> placedOccupants = new ObjectIntMap<Obstacle>();
+	/** Number of board occupant types */
+	private static final int OCCUPANT_TYPES = 10;
+	/** Obstacles filed by the tile they are on */
+	protected SpatialIndex obstacleIndex;
+	/** Wall sprites, baked by depth row */
+	protected StaticLayer staticLayer;
+	/** Objects created before the walls; they draw under the walls of their own row */
+	protected ObjectSet<Obstacle> underWalls = new ObjectSet<Obstacle>();
+	/** Line of sight through the walls, between tiles a guard or camera could see across */
+	protected VisibilityTable visibility;
+	/** The tiles each guard and camera can see */
+	protected ObjectMap<Obstacle, FieldOfView> views = new ObjectMap<Obstacle, FieldOfView>();
+	/** Guards and cameras filed by the part of the board they can see */
+	protected ObserverGrid observers;
+	/** Guards by sector, for camera and laser alerts */
+	protected SectorRegistry sectors;
+	/** Nearby obstacles found by the last index query (scratch space for draw) */
+	private Array<Obstacle> nearby = new Array<Obstacle>();
 	/** Alarm */
 	protected Alarm alarm;
 	/** The camera defining the RayHandler view; scale is in physics coordinates */
@@ -119,6 +145,18 @@ public class LevelModel {
 	protected RayHandler rayhandler;
 	/** All of the active lights that we loaded from the JSON file */
 	private Array<ConeSource> lights = new Array<ConeSource>();
+	/** Level of detail for the lights */
+	protected LightLOD lightLOD;
+	/** Render quality of the lightmap, for every level */
+	private static LightQuality lightQuality = LightQuality.HIGH;
+	/** Whether guard routes are planned ahead on a worker pool, for every level */
+	private static boolean parallelPlanning = false;
+	/** Whether guard flow fields are repaired in place when doors toggle, for every level */
+	private static boolean repairFields = true;
+	/** How guards and cameras test line of sight to the player, for every level */
+	private static LightController.SightMode sightMode = LightController.SightMode.RAYCAST;
+	/** Whether raycasts check the walls with the visibility table first, for every level */
+	private static boolean useVisibility = true;
 	/** The current light source being used.  If -1, there are no shadows */
 	private int activeLight;
 	
@@ -216,6 +254,77 @@ public class LevelModel {
      */
 	public ArrayList<AIController> getControl() {return controls; }
 
+	/**
+	 * Returns the index of obstacles by tile
+	 */
+	public SpatialIndex getObstacleIndex() { return obstacleIndex; }
+
+	/**
+	 * Returns the line of sight table through the walls
+	 */
+	public VisibilityTable getVisibility() { return visibility; }
+
+	/**
+	 * Returns the tiles a guard or camera can see, or null if it has no view
+	 */
+	public FieldOfView getFieldOfView(Obstacle viewer) { return views.get(viewer); }
+
+	/**
+	 * Returns the guards and cameras filed by the part of the board they can see
+	 */
+	public ObserverGrid getObservers() { return observers; }
+
+	/**
+	 * Returns the guards by sector
+	 */
+	public SectorRegistry getSectors() { return sectors; }
+
+	/**
+	 * Returns the level of detail manager for the lights
+	 */
+	public LightLOD getLightLOD() { return lightLOD; }
+
+	/**
+	 * Returns the render quality of the lightmap
+	 */
+	public static LightQuality getLightQuality() { return lightQuality; }
+
+	/**
+	 * Sets the render quality of the lightmap; it applies from the next level loaded
+	 */
+	public static void setLightQuality(LightQuality quality) { lightQuality = quality; }
+
+	/**
+	 * Sets whether guard routes are planned ahead on a worker pool; it applies from the next level loaded
+	 */
+	public static void setParallelPlanning(boolean value) { parallelPlanning = value; }
+
+	/**
+	 * Sets whether guard flow fields are repaired in place when doors toggle, rather
+	 * than rebuilt; it applies from the next level loaded
+	 */
+	public static void setRepairFields(boolean value) { repairFields = value; }
+
+	/**
+	 * Returns how guards and cameras test line of sight to the player
+	 */
+	public static LightController.SightMode getSightMode() { return sightMode; }
+
+	/**
+	 * Sets how guards and cameras test line of sight to the player; it applies from the next level loaded
+	 */
+	public static void setSightMode(LightController.SightMode mode) { sightMode = mode; }
+
+	/**
+	 * Returns true if raycasts check the walls with the visibility table first
+	 */
+	public static boolean getUseVisibility() { return useVisibility; }
+
+	/**
+	 * Sets whether raycasts check the walls with the visibility table first; it applies from the next level loaded
+	 */
+	public static void setUseVisibility(boolean value) { useVisibility = value; }
+
 	/**
 	 * Returns a reference to the exit door
 	 * 
@@ -363,6 +472,12 @@ public class LevelModel {
 //		int[] invalidTiles = levelFormat.get("invalidTiles").asIntArray();
 //		board.setInvalidTiles(invalidTiles);
 		board.setTiles(levelFormat.get("tiles").asIntArray());
+		flowFields = new FlowFieldService(board);
+		flowFields.setIncremental(repairFields);
+		planner = new HierarchicalPlanner(board);
+		scheduler = new AIScheduler(board, planner, flowFields);
+		scheduler.setParallel(parallelPlanning);
+		obstacleIndex = new SpatialIndex(board);
 		bounds = new Rectangle(0,0,pSize[0],pSize[1]);
 		scale.x = gSize[0]/pSize[0];
 		scale.y = gSize[1]/pSize[1];
@@ -382,6 +497,7 @@ public class LevelModel {
 		}
 		//createPointLights(levelFormat.get("pointlights"));
 		createConeLights(levelFormat.get("lights"));
+		lightLOD = new LightLOD(lights);
 		
 		// Add level goal
 		if (levelFormat.has("exit")) {
@@ -435,12 +551,21 @@ public class LevelModel {
             signdata = signdata.next();
         }
 
+		// Walls never move, so they are drawn from a baked layer instead of one by one.
+		// So are decorations that never animate; signs animate and show text, so they do not.
+		staticLayer = new StaticLayer();
+		underWalls.clear();
+		for (Obstacle o : objects) {
+			underWalls.add(o);
+		}
+
 		JsonValue bounds = levelFormat.get("exteriorwall");
 		ExteriorWall ew = new ExteriorWall();
 		ew.initialize(bounds);
 		ew.setDrawScale(scale);
 		for (Obstacle o: ew.bodies){
 			activate(o);
+			staticLayer.add((StaticSprite)o);
 		}
 
 		JsonValue walls = levelFormat.get("interiorwall");
@@ -449,6 +574,7 @@ public class LevelModel {
 		iw.setDrawScale(scale);
 		for (Obstacle o: iw.bodies){
 			activate(o);
+			staticLayer.add((StaticSprite)o);
 		}
 
 		// Create the dude and attach light sources
@@ -464,6 +590,7 @@ public class LevelModel {
 		guards = new ArrayList<GuardModel>();
 		//AIController List
 		controls = new ArrayList<AIController>();
+		sectors = new SectorRegistry();
 
 		GuardModel guard;
 		AIController ai;
@@ -482,9 +609,10 @@ public class LevelModel {
 			attachLights(guard, lights.get(guardData.get("lightIndex").asInt()));
 
 			// Testing AIController
-			ai = new AIController(board, guard);
+			ai = new AIController(board, flowFields, planner, scheduler, guard);
 			controls.add(ai);
 			ai.initialize(guardData);
+			sectors.add(ai);
 			this.guards.add(guard);
 
 			guardData = guardData.next();
@@ -516,6 +644,9 @@ public class LevelModel {
 				deco.setHeight(deco.getTexture().getRegionHeight()/scale.y);
 			deco.setDrawScale(scale);
 			activate(deco);
+			if (deco.isStill()) {
+				staticLayer.add(deco);
+			}
 			decodata = decodata.next();
 		}
 
@@ -606,6 +737,134 @@ public class LevelModel {
 			}
 			activate(objective);
 		}
+
+		// Precompute patrol routes against the starting layout
+		placedOccupants.clear();
+		buildStaticOccupancy();
+		for (DoorModel door : doors) {
+			obstacleIndex.move(door);
+		}
+		for (SwitchModel sw : switches) {
+			obstacleIndex.move(sw);
+		}
+		for (CameraModel camera : cameras) {
+			obstacleIndex.move(camera);
+		}
+		for (Laser laser : lasers) {
+			obstacleIndex.move(laser);
+		}
+		updateBoard();
+		for (AIController control : controls) {
+			control.buildPatrolRoutes();
+		}
+		buildVisibility();
+		buildViews();
+		buildObservers();
+	}
+
+	/**
+	 * Builds the line of sight table from the walls, out to the farthest any guard or
+	 * camera can see.
+	 */
+	private void buildVisibility(){
+		float sight = 0;
+		for (GuardModel g : guards) {
+			if (g.getLight() != null) {
+				sight = Math.max(sight, g.getLight().getDistance());
+			}
+			sight = Math.max(sight, g.getSensitiveRadius());
+		}
+		for (CameraModel camera : cameras) {
+			if (camera.getLight() != null) {
+				sight = Math.max(sight, camera.getLight().getDistance());
+			}
+		}
+		visibility = new VisibilityTable(board.getWidth(), board.getHeight(), (int)Math.ceil(sight) + 1);
+		for (Obstacle o : objects) {
+			if (o instanceof InteriorWall.WallBlock || o instanceof ExteriorWall.WallBlock) {
+				BoxObstacle wall = (BoxObstacle)o;
+				visibility.addWall(wall.getX() - wall.getWidth() / 2, wall.getY() - wall.getHeight() / 2,
+						wall.getWidth(), wall.getHeight());
+			}
+		}
+	}
+
+	/**
+	 * Creates a field of view for each guard and camera, if line of sight is tested
+	 * with them.  Guards are blocked by what blocks their light; cameras see over walls.
+	 */
+	private void buildViews() {
+		for (FieldOfView view : views.values()) {
+			view.dispose();
+		}
+		views.clear();
+		if (sightMode != LightController.SightMode.FIELD_OF_VIEW) {
+			return;
+		}
+		for (GuardModel g : guards) {
+			views.put(g, new FieldOfView(board, GridLineOfSight.GUARD_OPAQUE));
+		}
+		for (CameraModel camera : cameras) {
+			views.put(camera, new FieldOfView(board, GridLineOfSight.CAMERA_OPAQUE));
+		}
+		updateViews();
+	}
+
+	/**
+	 * Brings each field of view up to date.  A view only recomputes when its guard or
+	 * camera changed tile or direction, or a tile near it changed, so sleeping guards
+	 * and cameras cycling through their angles are cheap.
+	 */
+	private void updateViews() {
+		if (views.size == 0) {
+			return;
+		}
+		for (GuardModel g : guards) {
+			ConeSource light = g.getLight();
+			if (light != null) {
+				views.get(g).update(g.getX(), g.getY(), g.getDirection().x, g.getDirection().y,
+						light.getDistance(), light.getConeDegree(), g.getSensitiveRadius());
+			} else {
+				views.get(g).clear();
+			}
+		}
+		for (CameraModel camera : cameras) {
+			ConeSource light = camera.getLight();
+			if (camera.isOn() && light != null) {
+				views.get(camera).update(camera.getX(), camera.getY(), camera.getDirection().x,
+						camera.getDirection().y, light.getDistance(), light.getConeDegree(), 0);
+			} else {
+				views.get(camera).clear();
+			}
+		}
+	}
+
+	/**
+	 * Files the guards and cameras in the observer grid.  Cameras never move, so they
+	 * are filed once, with the reach of their light when on.
+	 */
+	private void buildObservers() {
+		observers = new ObserverGrid(board.getWidth(), board.getHeight(), visibility.getRadius());
+		for (CameraModel camera : cameras) {
+			if (camera.getLight() != null) {
+				observers.place(camera, camera.getX(), camera.getY(), camera.getLight().getDistance() + 1);
+			}
+		}
+		updateObservers();
+	}
+
+	/**
+	 * Moves the guards in the observer grid.  The reach is padded by a tile, as the
+	 * guards test the middle of the player rather than its position.
+	 */
+	private void updateObservers() {
+		for (GuardModel g : guards) {
+			float reach = g.getSensitiveRadius();
+			if (g.getLight() != null) {
+				reach = Math.max(reach, g.getLight().getDistance());
+			}
+			observers.place(g, g.getX(), g.getY(), reach + 1);
+		}
 	}
 
 	public void placeBox(DudeModel player) {
@@ -656,14 +915,15 @@ public class LevelModel {
 		raycamera.position.set(bounds.width/2.0f, bounds.height/2.0f, 0);
 		raycamera.update();
 
-		RayHandler.setGammaCorrection(light.getBoolean("gamma"));
+		RayHandler.setGammaCorrection(lightQuality.getGamma(light.getBoolean("gamma")));
 		RayHandler.useDiffuseLight(light.getBoolean("diffuse"));
-		rayhandler = new RayHandler(world, Gdx.graphics.getWidth(), Gdx.graphics.getWidth());
+		int downscale = lightQuality.getDownscale();
+		rayhandler = new RayHandler(world, Gdx.graphics.getWidth()/downscale, Gdx.graphics.getHeight()/downscale);
 		rayhandler.setCombinedMatrix(raycamera);
 			
 		float[] color = light.get("color").asFloatArray();
 		rayhandler.setAmbientLight(color[0], color[1], color[2], color[3]);
-		int blur = light.getInt("blur");
+		int blur = lightQuality.getBlur(light.getInt("blur"));
 		rayhandler.setBlur(blur > 0);
 		rayhandler.setBlurNum(blur);
 	}
@@ -818,6 +1078,21 @@ public class LevelModel {
 	 * necessary whenever we reset a level.
 	 */
 	public void dispose() {
+		if (scheduler != null) {
+			scheduler.dispose();
+			scheduler = null;
+		}
+		if (board != null) {
+			board.dispose();
+		}
+		if (staticLayer != null) {
+			staticLayer.dispose();
+		}
+		for (FieldOfView view : views.values()) {
+			view.dispose();
+		}
+		views.clear();
+
 		for(LightSource light : lights) {
 			light.remove();
 		}
@@ -935,9 +1210,109 @@ public class LevelModel {
 	/**
 	 * Add object information to the board
 	 *
+	 * Only the objects that move or change state (the player, guards, boxes and doors)
+	 * are checked; each one touches the board only when its tile or type changed.
 	 */
 	private void updateBoard(){
-		board.resetOccupants();
+		placeOccupant(avatar, board.physicsToBoard(avatar.getX()+avatar.getWidth()/2),
+				board.physicsToBoard(avatar.getY()+avatar.getHeight()/2), 3);
+		for (GuardModel g : guards) {
+			placeOccupant(g, board.physicsToBoard(g.getX()+g.getWidth()/2),
+					board.physicsToBoard(g.getY()+g.getHeight()/2), 2);
+		}
+		for (MoveableBox b : boxes) {
+			if (b.isActive()) {
+				placeOccupant(b, board.physicsToBoard(b.getX()), board.physicsToBoard(b.getY()), 5);
+			} else {
+				removeOccupant(b);
+			}
+		}
+		for (DoorModel door : doors) {
+			placeOccupant(door, board.physicsToBoard(door.getX()), board.physicsToBoard(door.getY()),
+					door.getOpen() ? 6 : 7);
+		}
+		board.refreshWalkable();
+		updateIndex();
+	}
+
+	/**
+	 * Moves the player, guards and boxes to their current tiles in the obstacle index.
+	 *
+	 * Boxes that are being carried are left out.
+	 */
+	private void updateIndex(){
+		obstacleIndex.move(avatar);
+		for (GuardModel g : guards) {
+			obstacleIndex.move(g);
+		}
+		for (MoveableBox b : boxes) {
+			if (b.isActive()) {
+				obstacleIndex.move(b);
+			} else {
+				obstacleIndex.remove(b);
+			}
+		}
+	}
+
+	/**
+	 * Draws the player and guards standing next to obj along its row, so they are not
+	 * hidden behind it.
+	 *
+	 * @return true if the player was drawn
+	 */
+	private boolean drawBeside(Obstacle obj, ObstacleCanvas canvas) {
+		boolean avatarDrawn = false;
+		int x = board.physicsToBoard(obj.getX());
+		int y = board.physicsToBoard(obj.getY());
+		nearby.clear();
+		obstacleIndex.query(x - 1, y, x + 1, y, Obstacle.class, nearby);
+		for (Obstacle o : nearby) {
+			if (o == avatar) {
+				avatar.draw(canvas);
+				avatarDrawn = true;
+			} else if (o instanceof GuardModel) {
+				o.draw(canvas);
+			}
+		}
+		return avatarDrawn;
+	}
+
+	/**
+	 * Draws the player and guards standing in the beam of a laser, so they are not
+	 * hidden behind it.
+	 *
+	 * @return true if the player was drawn
+	 */
+	private boolean drawInBeam(Laser laser, ObstacleCanvas canvas) {
+		boolean avatarDrawn = false;
+		float height = laser.getLaserHeight();
+		int x = board.physicsToBoard(laser.getX());
+		int center = board.physicsToBoard(laser.getY() + height / 2f);
+		nearby.clear();
+		obstacleIndex.query(x - 1, (int)Math.floor(center - height / 2f),
+				x + 1, (int)Math.ceil(center + height / 2f), Obstacle.class, nearby);
+		for (Obstacle o : nearby) {
+			int dx = Math.abs(board.physicsToBoard(o.getX()) - x);
+			int dy = Math.abs(center - board.physicsToBoard(o.getY()));
+			if (o == avatar) {
+				if (dx <= 0f && dy <= height / 4f) {
+					avatar.draw(canvas);
+					avatarDrawn = true;
+				}
+			} else if (o instanceof GuardModel && dx <= 1f && dy <= height / 2f) {
+				o.draw(canvas);
+			}
+		}
+		return avatarDrawn;
+	}
+
+	/**
+	 * Writes the objects that never move (walls, decorations, switches, cameras, signs,
+	 * lasers and the exit) to the static layer of the board.
+	 *
+	 * Lasers only ever mark their tiles, whether they are on or not, so they are static too.
+	 */
+	private void buildStaticOccupancy(){
 		for(Obstacle o: objects){
 			if(o instanceof ExteriorWall.WallBlock){
 				board.setOccupiedTiles(board.physicsToBoard(o.getX()),
@@ -953,20 +1328,6 @@ public class LevelModel {
 				board.setOccupiedTiles(board.physicsToBoard(o.getX()),
 						board.physicsToBoard(o.getY()),1);
 			}
-			if(o instanceof DudeModel){
-				board.setOccupiedTiles(board.physicsToBoard(o.getX()+((DudeModel) o).getWidth()/2),
-						board.physicsToBoard(o.getY()+((DudeModel) o).getHeight()/2),3);
-			}
-			if(o instanceof MoveableBox){
-				board.setOccupiedTiles(board.physicsToBoard(o.getX()),board.physicsToBoard(o.getY()),5);
-			}
-			if(o instanceof DoorModel){
-				if (((DoorModel) o).getOpen()) {
-					board.setOccupiedTiles(board.physicsToBoard(o.getX()), board.physicsToBoard(o.getY()), 6);
-				} else {
-					board.setOccupiedTiles(board.physicsToBoard(o.getX()), board.physicsToBoard(o.getY()), 7);
-				}
-			}
 			if(o instanceof SwitchModel || o instanceof CameraModel || o instanceof SignModel){
 				board.setOccupiedTiles(board.physicsToBoard(o.getX()),board.physicsToBoard(o.getY()),8);
 			}
@@ -981,16 +1342,42 @@ public class LevelModel {
 					}
 				}
 			}
-			if(o instanceof GuardModel){
-				board.setOccupiedTiles(board.physicsToBoard(o.getX()+((GuardModel) o).getWidth()/2),
-						board.physicsToBoard(o.getY()+((GuardModel) o).getHeight()/2),2);
-			}
 			if (o instanceof  ExitModel) {
 				board.setOccupiedTiles(board.physicsToBoard(o.getX()),board.physicsToBoard(o.getY()),9);
 				board.setOccupiedTiles(board.physicsToBoard(o.getX()+1),board.physicsToBoard(o.getY()),9);
 			}
 		}
 	}
+
+	/**
+	 * Moves an object's mark in the dynamic layer of the board to tile (x,y), if it changed.
+	 */
+	private void placeOccupant(Obstacle o, int x, int y, int oType){
+		if (!board.isSafeAt(x, y)) {
+			removeOccupant(o);
+			return;
+		}
+		int placed = board.tileIndex(x, y) * OCCUPANT_TYPES + oType;
+		int old = placedOccupants.get(o, -1);
+		if (old == placed) {
+			return;
+		}
+		if (old != -1) {
+			board.removeDynamicOccupant(old / OCCUPANT_TYPES, old % OCCUPANT_TYPES);
+		}
+		board.addDynamicOccupant(placed / OCCUPANT_TYPES, oType);
+		placedOccupants.put(o, placed);
+	}
+
+	/**
+	 * Removes an object's mark from the dynamic layer of the board, if it has one.
+	 */
+	private void removeOccupant(Obstacle o){
+		int old = placedOccupants.remove(o, -1);
+		if (old != -1) {
+			board.removeDynamicOccupant(old / OCCUPANT_TYPES, old % OCCUPANT_TYPES);
+		}
+	}
 	
 	/**
 	 * Updates all of the models in the level.
@@ -1002,7 +1389,9 @@ public class LevelModel {
 	 */
 	public boolean update(float dt) {
 		if (fixedStep(dt)) {
+			sectors.nextStep();
 			if (rayhandler != null) {
+				lightLOD.update(raycamera);
 				rayhandler.update();
 			}
 			avatar.update(dt);
@@ -1035,14 +1424,7 @@ public class LevelModel {
 			//Test for displaying board states
 //			board.update();
 
-			for (AIController ai : controls) {
-				ai.update();
-//				if (ai.getCurrentGoal() != null) {
-//					System.out.println();
-//					System.out.println(ai.getCurrentGoal().toString());
-//					System.out.println();
-//				}
-			}
+			scheduler.update(controls);
 
 			for (GuardModel g : guards) {
 				g.update(dt);
@@ -1051,6 +1433,8 @@ public class LevelModel {
 			for(CameraModel camera: cameras){
 				camera.update();
 			}
+			updateObservers();
+			updateViews();
 			return true;
 		}
 		return false;
@@ -1096,6 +1480,8 @@ public class LevelModel {
 		boolean avatarDrawn = false;
 
 		objects.sort((Obstacle o1, Obstacle o2) -> Float.compare(o2.getY(),o1.getY()));
+		// The physics step may have moved things since the last board update
+		updateIndex();
 		
 		// Draw the sprites first (will be hidden by shadows)
 		canvas.begin();
@@ -1105,7 +1491,12 @@ public class LevelModel {
 		for(SwitchModel s : switches) {
 			s.draw(canvas);
 		}
+		staticLayer.begin();
 		for(Obstacle obj : objects) {
+			if (staticLayer.contains(obj)) {
+				continue;
+			}
+			staticLayer.drawBehind(canvas, obj.getY(), !underWalls.contains(obj));
 //			if (!obj.getClass().equals(SwitchModel.class)) {
 //			    obj.draw(canvas);
 //			}
@@ -1114,48 +1505,18 @@ public class LevelModel {
 				if (obj.getClass().equals(DoorModel.class)){
 					if(!((DoorModel)obj).getVertical()){
 						obj.draw(canvas);
-						if (Math.abs(board.physicsToBoard(obj.getX()) - board.physicsToBoard(avatar.getX())) <= 1 &&
-								board.physicsToBoard(obj.getY()) == board.physicsToBoard(avatar.getY())) {
-							avatar.draw(canvas);
-							avatarDrawn = true;
-						}
-						for (GuardModel g : guards) {
-							if (Math.abs(board.physicsToBoard(obj.getX()) - board.physicsToBoard(g.getX())) <= 1 &&
-									board.physicsToBoard(obj.getY()) == board.physicsToBoard(g.getY())) {
-								g.draw(canvas);
-							}
-						}
+						avatarDrawn |= drawBeside(obj, canvas);
 					}else{
 						obj.draw(canvas);
 					}
 
 				}else {
 					obj.draw(canvas);
-					if (Math.abs(board.physicsToBoard(obj.getX()) - board.physicsToBoard(avatar.getX())) <= 1 &&
-							board.physicsToBoard(obj.getY()) == board.physicsToBoard(avatar.getY())) {
-						avatar.draw(canvas);
-						avatarDrawn = true;
-					}
-					for (GuardModel g : guards) {
-						if (Math.abs(board.physicsToBoard(obj.getX()) - board.physicsToBoard(g.getX())) <= 1 &&
-								board.physicsToBoard(obj.getY()) == board.physicsToBoard(g.getY())) {
-							g.draw(canvas);
-						}
-					}
+					avatarDrawn |= drawBeside(obj, canvas);
 				}
 			} else if (obj.getClass().equals(Laser.class)){
 				obj.draw(canvas);
-				if (Math.abs(board.physicsToBoard(obj.getX()) - board.physicsToBoard(avatar.getX()))<=0f &&
-						Math.abs(board.physicsToBoard(obj.getY()+((Laser) obj).getLaserHeight()/2f) - board.physicsToBoard(avatar.getY()))<=((Laser) obj).getLaserHeight()/4f) {
-					avatar.draw(canvas);
-					avatarDrawn = true;
-				}
-				for(GuardModel g: guards){
-					if(Math.abs(board.physicsToBoard(obj.getX()) - board.physicsToBoard(g.getX()))<=1f &&
-							Math.abs(board.physicsToBoard(obj.getY()+((Laser) obj).getLaserHeight()/2f) - board.physicsToBoard(g.getY()))<=((Laser) obj).getLaserHeight()/2f) {
-						g.draw(canvas);
-					}
-				}
+				avatarDrawn |= drawInBeam((Laser) obj, canvas);
 			} else if (!obj.equals(avatar)||!avatarDrawn){
 				obj.draw(canvas);
 			}
@@ -1171,6 +1532,7 @@ public class LevelModel {
 //				obj.draw(canvas);
 //			}
 		}
+		staticLayer.end(canvas);
 		canvas.end();
 
 		// Now draw the shadows
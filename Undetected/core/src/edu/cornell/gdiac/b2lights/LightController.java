@@ -3,166 +3,309 @@ package edu.cornell.gdiac.b2lights;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
 import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.Filter;
 import com.badlogic.gdx.physics.box2d.Fixture;
 import com.badlogic.gdx.physics.box2d.RayCastCallback;
+import com.badlogic.gdx.utils.Array;
 import edu.cornell.gdiac.physics.lights.ConeSource;
 import edu.cornell.gdiac.physics.lights.LightSource;
 import edu.cornell.gdiac.physics.obstacle.Obstacle;
 
 import java.util.ArrayList;
-import java.util.List;
 
 public class LightController {
+    /** How line of sight from a guard or camera to the player is tested */
+    public enum SightMode {
+        /** Box2D raycast against the fixtures in the world */
+        RAYCAST,
+        /** Traversal of the board tiles, stopping at the first opaque one */
+        GRID,
+        /** Lookup in the viewer's shadowcast field of view */
+        FIELD_OF_VIEW;
+
+        /** Returns the mode named by a string (case insensitive), or null if it names none */
+        public static SightMode parse(String name) {
+            for (SightMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(name)) {
+                    return mode;
+                }
+            }
+            return null;
+        }
+    }
+
+    /** Collision category of the walls */
+    private static final short WALL_CATEGORY = LevelModel.bitStringToShort(InteriorWall.COLLIDE_BIT);
+    /** Collision mask of the walls */
+    private static final short WALL_MASK = LevelModel.bitStringToComplement(InteriorWall.EXCLUDE_BIT);
+
     LevelModel level;
+    /** Whether to answer for the walls from the level's visibility table instead of a raycast */
+    private boolean useVisibility;
+    /** How line of sight is tested */
+    private SightMode sightMode;
+    /** Grid line of sight engine, over the board it was created for */
+    private GridLineOfSight grid;
+    /** Scratch vector for the closest ray hit */
+    private Vector2 hitPoint = new Vector2();
     static float dist_to_player;
     static Vector2 lightPos;
-    static short maskBits;
-    static short collideBits;
-    private static List<Body> intersected = new ArrayList<Body>();
-    private static List<Vector2> contact_points = new ArrayList<Vector2>();
+    /** The player's body, which never blocks a ray */
+    private Body playerBody;
+    /** Contact filter of the light being tested, for the ray callback */
+    private Filter rayFilter;
+    /** Whether the ray callback ignores walls, as the visibility table already cleared them */
+    private boolean skipWalls;
+    /** Fraction along the last ray of the closest blocking fixture, or 1 if none */
+    private float hitFraction;
+    /** Scratch vector from the viewer to the player */
+    private Vector2 toPlayer = new Vector2();
+    /** The guards and cameras that saw the player on the last detection pass */
+    private Detection detection = new Detection();
+    /** Guards and cameras that could see the player (scratch space for detection) */
+    private Array<GuardModel> nearGuards = new Array<GuardModel>();
+    private Array<CameraModel> nearCameras = new Array<CameraModel>();
+    /** Keeps the closest fixture the current light filter sees, clipping the ray to it */
     final RayCastCallback ray = new RayCastCallback() {
         @Override
         final public float reportRayFixture(Fixture fixture, Vector2 point,
                                             Vector2 normal, float fraction) {
-            Body b = fixture.getBody();
-            Object o = b.getUserData();
-            if((maskBits & fixture.getFilterData().categoryBits) !=0 && (collideBits & fixture.getFilterData().maskBits)!=0){
-                intersected.add(fixture.getBody());
-                contact_points.add(point);
-                //System.out.println("collided with "+fixture.getUserData());
+            if (!blocks(rayFilter, fixture) || fixture.getBody() == playerBody
+                    || skipWalls && (fixture.getFilterData().categoryBits & WALL_CATEGORY) != 0) {
+                return -1;
             }
-            return 1;
+            hitFraction = fraction;
+            return fraction;
         }
     };
 
+    /**
+     * The guards and cameras that see the player on one step, in the order they were
+     * checked.  It is refilled by every detection pass, so read it before the next one.
+     */
+    public static class Detection {
+        private Array<GuardModel> guards = new Array<GuardModel>();
+        private Array<CameraModel> cameras = new Array<CameraModel>();
+
+        /** Returns every guard that sees the player */
+        public Array<GuardModel> getGuards() {
+            return guards;
+        }
+
+        /** Returns every camera that sees the player */
+        public Array<CameraModel> getCameras() {
+            return cameras;
+        }
+
+        /** Returns the first guard that sees the player, or null if none does */
+        public GuardModel getGuard() {
+            return guards.size == 0 ? null : guards.first();
+        }
+
+        /** Returns the first camera that sees the player, or null if none does */
+        public CameraModel getCamera() {
+            return cameras.size == 0 ? null : cameras.first();
+        }
+
+        /** Returns true if any guard or camera sees the player */
+        public boolean isDetected() {
+            return guards.size > 0 || cameras.size > 0;
+        }
+
+        /** Empties the lists */
+        public void clear() {
+            guards.clear();
+            cameras.clear();
+        }
+    }
+
     public LightController(LevelModel level){
         this.level = level;
+        this.sightMode = LevelModel.getSightMode();
+        this.useVisibility = LevelModel.getUseVisibility();
+    }
+
+    /** Returns true if the walls are checked with the level's visibility table */
+    public boolean getUseVisibility() {
+        return useVisibility;
+    }
+
+    /** Returns how line of sight from guards and cameras is tested */
+    public SightMode getSightMode() {
+        return sightMode;
+    }
+
+    /**
+     * Checks every guard and camera against the player once, and returns the ones that
+     * see it.  The result is reused by the next pass.
+     */
+    public Detection detect(ArrayList<GuardModel> guards, ArrayList<CameraModel> cameras) {
+        detection.clear();
+        detectGuards(guards);
+        detectCameras(cameras);
+        return detection;
+    }
+
+    /** Returns the result of the last detection pass */
+    public Detection getDetection() {
+        return detection;
     }
 
-//    public boolean detectedByGuards(ArrayList<GuardModel> guards){
+    /** Returns the first guard that sees the player, or null if none does */
     public GuardModel detectedByGuards(ArrayList<GuardModel> guards){
+        detection.guards.clear();
+        detectGuards(guards);
+        return detection.getGuard();
+    }
+
+    /** Returns the first camera that sees the player, or null if none does */
+    public CameraModel detectedByCameras(ArrayList<CameraModel> cameras){
+        detection.cameras.clear();
+        detectCameras(cameras);
+        return detection.getCamera();
+    }
+
+    /**
+     * Adds every guard that sees the player to the detection result.  Only the guards
+     * the level's observer grid says could reach the player are tested.
+     */
+    private void detectGuards(ArrayList<GuardModel> guards) {
         DudeModel player = this.level.getAvatar();
+        playerBody = player.getBody();
 
-        for(GuardModel guard: guards) {
-            Vector2 playerPos = new Vector2(player.getX(), player.getY() + player.getHeight() / 2);
+        nearGuards.clear();
+        ObserverGrid observers = level.getObservers();
+        if (observers != null) {
+            observers.query(player.getX(), player.getY(), GuardModel.class, nearGuards);
+        } else {
+            for (int i = 0; i < guards.size(); i++) {
+                nearGuards.add(guards.get(i));
+            }
+        }
+        for (int i = 0; i < nearGuards.size; i++) {
+            GuardModel guard = nearGuards.get(i);
             ConeSource light = guard.getLight();
-            maskBits = light.getContactFilter().maskBits;
-            collideBits = light.getContactFilter().categoryBits;
+            Filter filter = light.getContactFilter();
             lightPos = light.getPosition();
-            float range = ((ConeSource) light).getDistance();
+            float range = light.getDistance();
             //a vector from the guard to the player
-            Vector2 guard_to_player = playerPos.sub(guard.getPosition());
+            toPlayer.set(player.getX(), player.getY() + player.getHeight() / 2).sub(guard.getPosition());
 
-            dist_to_player = Vector2.len(guard_to_player.x, guard_to_player.y);
+            dist_to_player = toPlayer.len();
             //the angle between the player and the guard
-            float player_guard_angle = guard_to_player.angle(guard.getDirection());
+            float player_guard_angle = toPlayer.angle(guard.getDirection());
             player_guard_angle = player_guard_angle < 0 ? player_guard_angle + 360 : player_guard_angle;
             player_guard_angle = player_guard_angle > 180 ? 360 - player_guard_angle : player_guard_angle;
 
             //if player is within the cone light region, raycast from guard to player
-
             if (dist_to_player <= range && player_guard_angle <= light.getConeDegree()) {
-                level.getWorld().rayCast(ray, guard.getPosition(), player.getPosition());
-                for (int i = 0; i < intersected.size(); i++) {
-                    Object b = intersected.get(i).getUserData();
-                    if (!(b instanceof DudeModel && (Obstacle) b == player)) {
-                        if (light.getPosition().dst(contact_points.get(i)) < dist_to_player) {
-                            clearIntersectionData();
-//                            return false;
-                            return null;
-                        }
-                    }
-                    if (b instanceof DudeModel && intersected.size() == 1) {
-                    }
+                if (!lineBlocked(guard, filter, guard.getPosition(), player.getPosition(), light.getPosition())) {
+                    detection.guards.add(guard);
                 }
-                clearIntersectionData();
-//                guard.getLight().setColor(0,0,0,0);
-//                return true;
-                return guard;
-
-            }else if(dist_to_player<=guard.getSensitiveRadius()){
-                level.getWorld().rayCast(ray, guard.getPosition(), player.getPosition());
-                for(int i=0; i<intersected.size(); i++){
-                    Object b = intersected.get(i).getUserData();
-                    if(!(b instanceof DudeModel && (Obstacle)b==player)){
-                        if(guard.getPosition().dst(contact_points.get(i))<dist_to_player){
-                            clearIntersectionData();
-//                            return false;
-                            return guard;
-                        }
-                    }
+            } else if (dist_to_player <= guard.getSensitiveRadius()) {
+                if (!lineBlocked(guard, filter, guard.getPosition(), player.getPosition(), guard.getPosition())) {
+                    guard.collidedAvatar(player);
+                    guard.setAlarmed(true);
                 }
-                clearIntersectionData();
-                guard.collidedAvatar(player);
-                guard.setAlarmed(true);
-//                return true;
-                return guard;
+                detection.guards.add(guard);
             }
         }
-        clearIntersectionData();
-//        return false;
-        return null;
-        //player is not in guard's cone light, but within their sensitive radius
-        /**else if(dist_to_player<=guard.getSensitiveRadius()){
-         level.getWorld().rayCast(ray, guard.getPosition(), player.getPosition());
-         for(int i=0; i<intersected.size(); i++){
-         Object b = intersected.get(i).getUserData();
-         if(!(b instanceof DudeModel && (Obstacle)b==player)){
-         if(guard.getPosition().dst(contact_points.get(i))<dist_to_player){
-         clearIntersectionData();
-         return false;
-         }
-         }
-         }
-         clearIntersectionData();
-         guard.collidedAvatar(player);
-         guard.setAlarmed(true);
-         return true;
-         }**/                                                  //PUT THIS IN LATER WHEN WE GET IN RINGS FOR THE GUARD
     }
 
-    public CameraModel detectedByCameras(ArrayList<CameraModel> cameras){
+    /**
+     * Adds every camera that sees the player to the detection result.  Only the cameras
+     * the level's observer grid says could reach the player are tested.
+     */
+    private void detectCameras(ArrayList<CameraModel> cameras) {
         DudeModel player = this.level.getAvatar();
-        for(CameraModel cam: cameras) {
-            if (cam.isOn()) {
-                Vector2 playerPos = new Vector2(player.getX(), player.getY());
-                ConeSource light = cam.getLight();
-                maskBits = light.getContactFilter().maskBits;
-                lightPos = light.getPosition();
-                float range = ((ConeSource) light).getDistance();
-                //a vector from the guard to the player
-                Vector2 guard_to_player = playerPos.sub(cam.getPosition());
-
-                dist_to_player = Vector2.len(guard_to_player.x, guard_to_player.y);
-                //the angle between the player and the guard
-                float player_guard_angle = guard_to_player.angle(cam.getDirection());
-                player_guard_angle = player_guard_angle < 0 ? player_guard_angle + 360 : player_guard_angle;
-                player_guard_angle = player_guard_angle > 180 ? 360 - player_guard_angle : player_guard_angle;
-
-                //if player is within the cone light region, raycast from guard to player
-                if (dist_to_player <= range && player_guard_angle <= light.getConeDegree()) {
-                    level.getWorld().rayCast(ray, light.getPosition(), player.getPosition());
-                    for (int i = 0; i < intersected.size(); i++) {
-                        Object b = intersected.get(i).getUserData();
-                        if (!(b instanceof DudeModel && (Obstacle) b == player)) {
-                            if (light.getPosition().dst(contact_points.get(i)) < dist_to_player) {
-                                clearIntersectionData();
-                                return null;
-                            }
-                        }
-                    }
-                    clearIntersectionData();
-                    return cam;
+        playerBody = player.getBody();
+
+        nearCameras.clear();
+        ObserverGrid observers = level.getObservers();
+        if (observers != null) {
+            observers.query(player.getX(), player.getY(), CameraModel.class, nearCameras);
+        } else {
+            for (int i = 0; i < cameras.size(); i++) {
+                nearCameras.add(cameras.get(i));
+            }
+        }
+        for (int i = 0; i < nearCameras.size; i++) {
+            CameraModel cam = nearCameras.get(i);
+            if (!cam.isOn()) {
+                continue;
+            }
+            ConeSource light = cam.getLight();
+            Filter filter = light.getContactFilter();
+            lightPos = light.getPosition();
+            float range = light.getDistance();
+            //a vector from the camera to the player
+            toPlayer.set(player.getX(), player.getY()).sub(cam.getPosition());
+
+            dist_to_player = toPlayer.len();
+            //the angle between the player and the camera
+            float player_cam_angle = toPlayer.angle(cam.getDirection());
+            player_cam_angle = player_cam_angle < 0 ? player_cam_angle + 360 : player_cam_angle;
+            player_cam_angle = player_cam_angle > 180 ? 360 - player_cam_angle : player_cam_angle;
+
+            //if player is within the cone light region, raycast from camera to player
+            if (dist_to_player <= range && player_cam_angle <= light.getConeDegree()) {
+                if (!lineBlocked(cam, filter, light.getPosition(), player.getPosition(), light.getPosition())) {
+                    detection.cameras.add(cam);
                 }
             }
-            clearIntersectionData();
         }
-        return null;
     }
 
+    /**
+     * Returns true if something the light filter sees lies on the segment from start
+     * to end, closer to origin than dist_to_player.  The player never counts.
+     *
+     * The walls are answered by the level's visibility table when it knows the pair of
+     * tiles: if they hide the player completely there is no ray test at all, and if they
+     * cannot hide any of it the Box2D raycast ignores them.  Otherwise this is a plain
+     * Box2D raycast.  In GRID mode the board tiles are walked instead, and in
+     * FIELD_OF_VIEW mode the player's tile is looked up in the viewer's field of view.
+     */
+    private boolean lineBlocked(Obstacle viewer, Filter filter, Vector2 start, Vector2 end, Vector2 origin) {
+        boolean walls = (filter.maskBits & WALL_CATEGORY) != 0 && (filter.categoryBits & WALL_MASK) != 0;
+        if (sightMode == SightMode.FIELD_OF_VIEW) {
+            FieldOfView view = level.getFieldOfView(viewer);
+            if (view != null) {
+                return !view.isVisible(end.x, end.y);
+            }
+        }
+        if (sightMode == SightMode.GRID) {
+            // The level reuses this controller across resets, which replace the board
+            if (grid == null || grid.getBoard() != level.getBoard()) {
+                grid = new GridLineOfSight(level.getBoard());
+            }
+            return !grid.isClear(start.x, start.y, end.x, end.y,
+                    walls ? GridLineOfSight.GUARD_OPAQUE : GridLineOfSight.CAMERA_OPAQUE);
+        }
+
+        VisibilityTable table = useVisibility && walls ? level.getVisibility() : null;
+        int seen = table == null ? VisibilityTable.UNKNOWN : table.query(start.x, start.y, end.x, end.y);
+        if (seen == VisibilityTable.OCCLUDED) {
+            return true;
+        }
+        skipWalls = seen == VisibilityTable.CLEAR;
+
+        // The callback clips the ray to the closest blocker, so only it is reported last
+        hitFraction = 1;
+        rayFilter = filter;
+        level.getWorld().rayCast(ray, start, end);
+        return hitFraction < 1 && origin.dst(hitPoint.set(start).lerp(end, hitFraction)) < dist_to_player;
+    }
+
+    /** Returns true if a light with the given contact filter is blocked by the fixture */
+    private static boolean blocks(Filter light, Fixture fixture) {
+        Filter filter = fixture.getFilterData();
+        return (light.maskBits & filter.categoryBits) != 0 && (light.categoryBits & filter.maskBits) != 0;
+    }
+
+    /** Forgets the last ray hit */
     public void clearIntersectionData(){
-        this.intersected = new ArrayList<Body>();
-        this.contact_points = new ArrayList<Vector2>();
+        hitFraction = 1;
     }
 
 }
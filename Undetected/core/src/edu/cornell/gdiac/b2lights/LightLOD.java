@@ -0,0 +1,94 @@
+package edu.cornell.gdiac.b2lights;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.Array;
+import edu.cornell.gdiac.physics.lights.ConeSource;
+
+/**
+ * Level of detail for the cone lights of a level.
+ *
+ * A light casts its full ray count only when its arc is long enough on screen to need
+ * it.  Each light gets its full count halved some number of times, until the rays
+ * are about PIXELS_PER_RAY apart along the arc.  A light that does not overlap the
+ * view keeps the count it has, as it is not drawn and changing it would only
+ * reallocate its rays.  The counts only change when the needed detail leaves a
+ * band around the current one, so a light near a boundary does not reallocate its rays
+ * every frame.
+ *
+ * This only changes how the lights are drawn.  Detection does its own ray tests.
+ */
+public class LightLOD {
+    /** Screen pixels of arc between rays */
+    private static final float PIXELS_PER_RAY = 4;
+    /** How far the needed rays must fall below a level before dropping to it */
+    private static final float HYSTERESIS = 1.25f;
+    /** Most times a full ray count is halved */
+    private static final int MAX_LEVEL = 4;
+
+    /** The lights managed */
+    private Array<ConeSource> lights;
+    /** Current level of each light (how many times its rays were halved) */
+    private int[] levels;
+    /** Number of ray count changes made, for profiling */
+    private int changes;
+
+    /** Creates a manager for the given lights, all at full detail */
+    public LightLOD(Array<ConeSource> lights) {
+        this.lights = lights;
+        levels = new int[lights.size];
+    }
+
+    /** Returns the number of ray count changes made so far */
+    public int getChanges() {
+        return changes;
+    }
+
+    /** Restores every light to its full ray count */
+    public void reset() {
+        for (int i = 0; i < lights.size; i++) {
+            lights.get(i).setRayCount(lights.get(i).getMaxRays());
+            levels[i] = 0;
+        }
+    }
+
+    /** Sets the ray count of each light from how it appears through the camera
+     *
+     *  @param camera the light camera, in physics coordinates
+     */
+    public void update(OrthographicCamera camera) {
+        float halfWidth = camera.viewportWidth * camera.zoom / 2;
+        float halfHeight = camera.viewportHeight * camera.zoom / 2;
+        float pixels = Gdx.graphics.getWidth() / (2 * halfWidth);
+        for (int i = 0; i < lights.size; i++) {
+            ConeSource light = lights.get(i);
+            float reach = light.getDistance();
+            boolean inView = Math.abs(light.getX() - camera.position.x) <= halfWidth + reach
+                    && Math.abs(light.getY() - camera.position.y) <= halfHeight + reach;
+            if (!inView) {
+                continue;
+            }
+            // Length on screen of the arc at the end of the cone
+            float arc = reach * pixels * 2 * light.getConeDegree() * MathUtils.degreesToRadians;
+            float needed = arc / PIXELS_PER_RAY;
+            int finest = levelFor(light.getMaxRays(), needed * HYSTERESIS);
+            int coarsest = levelFor(light.getMaxRays(), needed);
+            int level = MathUtils.clamp(levels[i], finest, coarsest);
+            if (level != levels[i]) {
+                levels[i] = level;
+                light.setRayCount(light.getMaxRays() >> level);
+                changes++;
+            }
+        }
+    }
+
+    /** Returns the most times rays can be halved while keeping at least the needed count */
+    private static int levelFor(int rays, float needed) {
+        int level = 0;
+        while (level < MAX_LEVEL && (rays >> (level + 1)) >= needed) {
+            level++;
+        }
+        return level;
+    }
+}
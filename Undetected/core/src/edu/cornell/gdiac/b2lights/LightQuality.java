@@ -0,0 +1,109 @@
+package edu.cornell.gdiac.b2lights;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.utils.TimeUtils;
+
+/**
+ * Render quality tiers for the lightmap.
+ *
+ * A tier shrinks the lightmap by a factor of the screen size, caps the blur passes a
+ * level asks for, and can turn off gamma correction.  HIGH draws every level as its
+ * JSON describes.  Whether a level uses diffuse lighting is left to the level, as it
+ * changes how the level looks rather than what it costs.
+ */
+public enum LightQuality {
+    /** Quarter size lightmap, no blur, no gamma correction */
+    LOW(4, 0, false),
+    /** Half size lightmap, at most one blur pass */
+    MEDIUM(2, 1, true),
+    /** Full size lightmap, as the level describes */
+    HIGH(1, Integer.MAX_VALUE, true);
+
+    /** Number of full screen fills drawn by the probe */
+    private static final int PROBE_FILLS = 64;
+    /** Most milliseconds per fill for the probe to choose HIGH */
+    private static final float HIGH_FILL_MS = 0.1f;
+    /** Most milliseconds per fill for the probe to choose MEDIUM */
+    private static final float MEDIUM_FILL_MS = 0.3f;
+
+    /** Factor the lightmap is smaller than the screen by */
+    private int downscale;
+    /** Most blur passes */
+    private int blur;
+    /** Whether gamma correction is allowed */
+    private boolean gamma;
+
+    LightQuality(int downscale, int blur, boolean gamma) {
+        this.downscale = downscale;
+        this.blur = blur;
+        this.gamma = gamma;
+    }
+
+    /** Returns the factor the lightmap is smaller than the screen by */
+    public int getDownscale() {
+        return downscale;
+    }
+
+    /** Returns the number of blur passes to use for a level that asks for the given number */
+    public int getBlur(int requested) {
+        return Math.min(requested, blur);
+    }
+
+    /** Returns whether to use gamma correction for a level that asks for it or not */
+    public boolean getGamma(boolean requested) {
+        return requested && gamma;
+    }
+
+    /** Returns the tier named by a string (case insensitive), or null if it names none */
+    public static LightQuality parse(String name) {
+        for (LightQuality quality : values()) {
+            if (quality.name().equalsIgnoreCase(name)) {
+                return quality;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Picks a tier by timing blended full screen fills into an offscreen buffer.
+     *
+     * Fill rate is what the lightmap and its blur cost, so slow fills mean a smaller
+     * lightmap.  This takes a few milliseconds and must run on the rendering thread.
+     */
+    public static LightQuality probe() {
+        int width = Gdx.graphics.getWidth();
+        int height = Gdx.graphics.getHeight();
+        FrameBuffer buffer = new FrameBuffer(Pixmap.Format.RGBA8888, width, height, false);
+        ShapeRenderer shapes = new ShapeRenderer();
+        shapes.getProjectionMatrix().setToOrtho2D(0, 0, width, height);
+
+        buffer.begin();
+        Gdx.gl.glEnable(GL20.GL_BLEND);
+        Gdx.gl.glBlendFunc(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+        Gdx.gl.glFinish();
+        long start = TimeUtils.nanoTime();
+        shapes.begin(ShapeRenderer.ShapeType.Filled);
+        shapes.setColor(1, 1, 1, 0.05f);
+        for (int i = 0; i < PROBE_FILLS; i++) {
+            shapes.rect(0, 0, width, height);
+        }
+        shapes.end();
+        Gdx.gl.glFinish();
+        float fill = TimeUtils.timeSinceNanos(start) / 1000000.0f / PROBE_FILLS;
+        Gdx.gl.glDisable(GL20.GL_BLEND);
+        buffer.end();
+
+        shapes.dispose();
+        buffer.dispose();
+        if (fill <= HIGH_FILL_MS) {
+            return HIGH;
+        } else if (fill <= MEDIUM_FILL_MS) {
+            return MEDIUM;
+        }
+        return LOW;
+    }
+}
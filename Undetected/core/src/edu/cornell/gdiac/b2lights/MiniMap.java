@@ -45,7 +45,12 @@ public class MiniMap {
         miniViewport.apply();
         canvas.begin();
         level.board.draw(canvas);
+        level.staticLayer.begin();
         for(Obstacle obj : level.objects) {
+            if (level.staticLayer.contains(obj)) {
+                continue;
+            }
+            level.staticLayer.drawBehind(canvas, obj.getY(), !level.underWalls.contains(obj));
             if(obj instanceof ObjectiveModel) {
                 if (!((ObjectiveModel) obj).getIsStolen()) {
                     alpha+=delta*2;
@@ -69,6 +74,7 @@ public class MiniMap {
                 obj.draw(canvas);
             }
         }
+        level.staticLayer.end(canvas);
 
         canvas.end();
         canvas.setCamera(bigCamera);
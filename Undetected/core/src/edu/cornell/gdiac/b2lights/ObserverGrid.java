@@ -0,0 +1,106 @@
+package edu.cornell.gdiac.b2lights;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import edu.cornell.gdiac.physics.obstacle.Obstacle;
+
+/**
+ * Coarse grid of the guards and cameras that could see each part of a board.
+ *
+ * The board is cut into square cells as wide as the farthest any observer can see.
+ * Each observer is filed in every cell its reach circle overlaps, which is at most
+ * four, so the observers that could see a point are found by reading the one cell
+ * holding it.  Observers that move are placed again every step; that only touches the
+ * grid when the cells they cover changed.  Observers that never move are placed once.
+ */
+public class ObserverGrid {
+    /** Width of a cell, in tiles */
+    private int cellSize;
+    /** Number of columns of cells */
+    private int columns;
+    /** Number of rows of cells */
+    private int rows;
+    /** Observers covering each cell, by column*rows+row */
+    private Array<Obstacle>[] cells;
+    /** The cells each observer covers, as {x0, y0, x1, y1} (inclusive) */
+    private ObjectMap<Obstacle, int[]> placed;
+
+    /** Creates an empty grid over a board
+     *
+     *  @param reach the farthest any observer can see, in tiles
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ObserverGrid(int width, int height, float reach) {
+        cellSize = Math.max(1, (int)Math.ceil(reach));
+        columns = (width + cellSize - 1) / cellSize;
+        rows = (height + cellSize - 1) / cellSize;
+        cells = new Array[columns * rows];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = new Array<Obstacle>(false, 4);
+        }
+        placed = new ObjectMap<Obstacle, int[]>();
+    }
+
+    /** Files an observer at (x, y) (in physics coordinates) seeing out to reach tiles */
+    public void place(Obstacle obj, float x, float y, float reach) {
+        int x0 = clampColumn(x - reach);
+        int y0 = clampRow(y - reach);
+        int x1 = clampColumn(x + reach);
+        int y1 = clampRow(y + reach);
+        int[] cover = placed.get(obj);
+        if (cover == null) {
+            cover = new int[]{0, 0, -1, -1};
+            placed.put(obj, cover);
+        } else if (cover[0] == x0 && cover[1] == y0 && cover[2] == x1 && cover[3] == y1) {
+            return;
+        }
+        unfile(obj, cover);
+        cover[0] = x0;
+        cover[1] = y0;
+        cover[2] = x1;
+        cover[3] = y1;
+        for (int cx = x0; cx <= x1; cx++) {
+            for (int cy = y0; cy <= y1; cy++) {
+                cells[cx * rows + cy].add(obj);
+            }
+        }
+    }
+
+    /** Removes an observer from the grid */
+    public void remove(Obstacle obj) {
+        int[] cover = placed.remove(obj);
+        if (cover != null) {
+            unfile(obj, cover);
+        }
+    }
+
+    /** Adds the observers of the given type that could see (x, y) (in physics coordinates) to out */
+    public <T extends Obstacle> void query(float x, float y, Class<T> type, Array<T> out) {
+        Array<Obstacle> cell = cells[clampColumn(x) * rows + clampRow(y)];
+        for (int i = 0; i < cell.size; i++) {
+            Obstacle obj = cell.get(i);
+            if (type.isInstance(obj)) {
+                out.add(type.cast(obj));
+            }
+        }
+    }
+
+    /** Takes an observer out of the cells it covers */
+    private void unfile(Obstacle obj, int[] cover) {
+        for (int cx = cover[0]; cx <= cover[2]; cx++) {
+            for (int cy = cover[1]; cy <= cover[3]; cy++) {
+                cells[cx * rows + cy].removeValue(obj, true);
+            }
+        }
+    }
+
+    /** Returns the column holding x, clamped to the grid */
+    private int clampColumn(float x) {
+        return Math.min(Math.max((int)Math.floor(x / cellSize), 0), columns - 1);
+    }
+
+    /** Returns the row holding y, clamped to the grid */
+    private int clampRow(float y) {
+        return Math.min(Math.max((int)Math.floor(y / cellSize), 0), rows - 1);
+    }
+}
@@ -0,0 +1,88 @@
+package edu.cornell.gdiac.b2lights;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import edu.cornell.gdiac.physics.obstacle.Obstacle;
+
+/**
+ * The guards of each sector, and the alerts sent to them.
+ *
+ * Cameras and lasers alert the guards of their own sector.  A source keeps raising its
+ * alert every step it sees the player, but only the first step of each run of steps
+ * (an alert episode) reaches the guards; the episode ends on the first step the source
+ * does not raise it.
+ */
+public class SectorRegistry {
+    /** Returned for a sector with no guards */
+    private static final Array<AIController> NO_CONTROLS = new Array<AIController>(0);
+
+    /** Controllers of the guards in each sector */
+    private IntMap<Array<AIController>> sectors;
+    /** Every registered controller */
+    private Array<AIController> controls;
+    /** The step each source last raised its alert */
+    private ObjectIntMap<Obstacle> lastAlerts;
+    /** Number of physics steps so far */
+    private int step;
+
+    /** Creates an empty registry */
+    public SectorRegistry() {
+        sectors = new IntMap<Array<AIController>>();
+        controls = new Array<AIController>();
+        lastAlerts = new ObjectIntMap<Obstacle>();
+    }
+
+    /** Files a controller under the sector of its guard */
+    public void add(AIController control) {
+        int sector = control.getGuard().sector;
+        Array<AIController> members = sectors.get(sector);
+        if (members == null) {
+            members = new Array<AIController>(false, 4);
+            sectors.put(sector, members);
+        }
+        members.add(control);
+        controls.add(control);
+    }
+
+    /** Returns the controllers of the guards in a sector; do not modify it */
+    public Array<AIController> getControls(int sector) {
+        Array<AIController> members = sectors.get(sector);
+        return members == null ? NO_CONTROLS : members;
+    }
+
+    /** Advances to the next physics step, ending the episodes of sources that were quiet */
+    public void nextStep() {
+        step++;
+    }
+
+    /** Sends the guards of a sector to protect a source that sees the player
+     *
+     *  Nothing is sent if the source already raised its alert on this or the last step.
+     *  Guards already answering this camera are skipped.
+     *
+     *  @return true if this started a new alert episode
+     */
+    public boolean alert(Obstacle source, int sector) {
+        int last = lastAlerts.get(source, Integer.MIN_VALUE);
+        lastAlerts.put(source, step);
+        if (last == step || last == step - 1) {
+            return false;
+        }
+        Array<AIController> members = getControls(sector);
+        for (int i = 0; i < members.size; i++) {
+            AIController ai = members.get(i);
+            if (ai.lastCamera != source) {
+                ai.setProtect(source);
+            }
+        }
+        return true;
+    }
+
+    /** Puts every guard in every sector on high alert, as when the objective is stolen */
+    public void alarmAll() {
+        for (int i = 0; i < controls.size; i++) {
+            controls.get(i).getGuard().setAlarmed2(true);
+        }
+    }
+}
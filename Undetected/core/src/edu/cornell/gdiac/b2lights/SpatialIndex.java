@@ -0,0 +1,104 @@
+package edu.cornell.gdiac.b2lights;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import edu.cornell.gdiac.physics.obstacle.Obstacle;
+
+/**
+ * Maps each board tile to the obstacles on it.
+ *
+ * An obstacle is filed under the tile Board.physicsToBoard() gives for its position.
+ * Objects that never move are filed once; moving ones are moved every step, which only
+ * touches the index when their tile changed.  Queries look at the tiles of a window, so
+ * they cost the number of obstacles nearby rather than the number in the level.
+ */
+public class SpatialIndex {
+    /** Board */
+    private Board board;
+    /** Obstacles on each tile, by flat index; tiles that never had one have no entry */
+    private IntMap<Array<Obstacle>> cells;
+    /** Flat index of the tile each obstacle is filed under */
+    private ObjectIntMap<Obstacle> placed;
+
+    /** Creates an empty index over the given board */
+    public SpatialIndex(Board board) {
+        this.board = board;
+        cells = new IntMap<>();
+        placed = new ObjectIntMap<>();
+    }
+
+    /** Removes every obstacle from the index */
+    public void clear() {
+        for (Array<Obstacle> cell : cells.values()) {
+            cell.clear();
+        }
+        placed.clear();
+    }
+
+    /** Files an obstacle under the tile of its current position
+     *
+     *  An obstacle off the board is removed from the index.
+     */
+    public void move(Obstacle obj) {
+        int x = board.physicsToBoard(obj.getX());
+        int y = board.physicsToBoard(obj.getY());
+        if (!board.inBounds(x, y)) {
+            remove(obj);
+            return;
+        }
+        int index = board.tileIndex(x, y);
+        int old = placed.get(obj, -1);
+        if (old == index) {
+            return;
+        }
+        if (old != -1) {
+            cells.get(old).removeValue(obj, true);
+        }
+        Array<Obstacle> cell = cells.get(index);
+        if (cell == null) {
+            cell = new Array<>(false, 4);
+            cells.put(index, cell);
+        }
+        cell.add(obj);
+        placed.put(obj, index);
+    }
+
+    /** Removes an obstacle from the index */
+    public void remove(Obstacle obj) {
+        int old = placed.remove(obj, -1);
+        if (old != -1) {
+            cells.get(old).removeValue(obj, true);
+        }
+    }
+
+    /** Adds the obstacles of the given type on tiles (x0..x1, y0..y1) to out
+     *
+     *  The bounds are inclusive and are clamped to the board.
+     */
+    public <T extends Obstacle> void query(int x0, int y0, int x1, int y1, Class<T> type, Array<T> out) {
+        x0 = Math.max(x0, 0);
+        y0 = Math.max(y0, 0);
+        x1 = Math.min(x1, board.getWidth() - 1);
+        y1 = Math.min(y1, board.getHeight() - 1);
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) {
+                Array<Obstacle> cell = cells.get(board.tileIndex(x, y));
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.size; i++) {
+                    Obstacle obj = cell.get(i);
+                    if (type.isInstance(obj)) {
+                        out.add(type.cast(obj));
+                    }
+                }
+            }
+        }
+    }
+
+    /** Adds the obstacles of the given type within range tiles of (x, y) to out */
+    public <T extends Obstacle> void queryNear(int x, int y, int range, Class<T> type, Array<T> out) {
+        query(x - range, y - range, x + range, y + range, type, out);
+    }
+}
@@ -0,0 +1,112 @@
+package edu.cornell.gdiac.b2lights;
+
+import com.badlogic.gdx.graphics.g2d.SpriteCache;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.ObjectSet;
+import edu.cornell.gdiac.physics.obstacle.ObstacleCanvas;
+
+/**
+ * Static sprites baked into one sprite cache per depth row.
+ *
+ * The level draws from back (high y) to front (low y).  The rows are baked the first
+ * time they are drawn, and each draw pass walks them in the same order, so a moving
+ * object only needs the rows behind it drawn before it.  Rows with nothing between
+ * them are drawn together.
+ */
+public class StaticLayer {
+    /** Sprites to bake */
+    private Array<StaticSprite> sprites;
+    /** The same sprites, for lookups */
+    private ObjectSet<Object> members;
+    /** Baked sprites; cache id i holds row i */
+    private SpriteCache cache;
+    /** Y position of each row, from back to front */
+    private FloatArray rows;
+    /** First row not drawn yet in this pass */
+    private int next;
+
+    /** Creates an empty layer */
+    public StaticLayer() {
+        sprites = new Array<>();
+        members = new ObjectSet<>();
+        rows = new FloatArray();
+    }
+
+    /** Adds a sprite to the layer; it is baked the next time the layer is drawn */
+    public void add(StaticSprite sprite) {
+        sprites.add(sprite);
+        members.add(sprite);
+        rows.clear();
+    }
+
+    /** Returns true if the object was added to the layer, and so is drawn by it */
+    public boolean contains(Object object) {
+        return members.contains(object);
+    }
+
+    /** Returns true if the layer has no sprites */
+    public boolean isEmpty() {
+        return sprites.size == 0;
+    }
+
+    /** Starts a draw pass from the back row */
+    public void begin() {
+        next = 0;
+    }
+
+    /** Draws the rows behind depth y that have not been drawn in this pass
+     *
+     *  @param inclusive whether the row at exactly y is drawn too
+     */
+    public void drawBehind(ObstacleCanvas canvas, float y, boolean inclusive) {
+        if (sprites.size == 0) {
+            return;
+        }
+        if (rows.size == 0) {
+            bake();
+        }
+        int last = next;
+        while (last < rows.size && (rows.get(last) > y || inclusive && rows.get(last) == y)) {
+            last++;
+        }
+        if (last > next) {
+            canvas.draw(cache, next, last);
+            next = last;
+        }
+    }
+
+    /** Draws the rows that have not been drawn in this pass */
+    public void end(ObstacleCanvas canvas) {
+        drawBehind(canvas, Float.NEGATIVE_INFINITY, true);
+    }
+
+    /** Releases the baked sprites */
+    public void dispose() {
+        if (cache != null) {
+            cache.dispose();
+            cache = null;
+        }
+        rows.clear();
+    }
+
+    /** Bakes the sprites into one cache per row */
+    private void bake() {
+        sprites.sort((StaticSprite s1, StaticSprite s2) -> Float.compare(s2.getY(), s1.getY()));
+        if (cache != null) {
+            cache.dispose();
+        }
+        cache = new SpriteCache(sprites.size, false);
+        int i = 0;
+        while (i < sprites.size) {
+            float y = sprites.get(i).getY();
+            cache.beginCache();
+            while (i < sprites.size && sprites.get(i).getY() == y) {
+                sprites.get(i).bake(cache);
+                i++;
+            }
+            cache.endCache();
+            rows.add(y);
+        }
+    }
+}
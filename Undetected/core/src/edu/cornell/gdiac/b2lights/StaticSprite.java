@@ -0,0 +1,14 @@
+package edu.cornell.gdiac.b2lights;
+
+import com.badlogic.gdx.graphics.g2d.SpriteCache;
+
+/**
+ * A sprite that never moves or animates, so it can be baked into a StaticLayer.
+ */
+public interface StaticSprite {
+    /** Returns the y position the sprite is depth sorted by */
+    public float getY();
+
+    /** Adds the sprite to a sprite cache, where draw() would put it */
+    public void bake(SpriteCache cache);
+}
@@ -0,0 +1,254 @@
+package edu.cornell.gdiac.b2lights;
+
+/**
+ * Precomputed tile-to-tile line of sight through the walls of a level.
+ *
+ * Tile (x, y) covers the square [x, x+1) x [y, y+1) in physics coordinates.  For every
+ * pair of tiles within a fixed radius of each other, the table says whether the walls
+ * hide all of one tile from the other, none of it, or only part of it:
+ * <ul>
+ * <li>CLEAR: the convex hull of the two tiles touches no wall, so no segment between
+ * them can hit one.</li>
+ * <li>OCCLUDED: some column (or row) of tiles between the two is solid wall across
+ * the whole width of their hull, so every segment between them must cross it.  Only
+ * tiles a wall covers completely count as solid, so this never hides a gap.</li>
+ * <li>PARTIAL: anything else; only a real ray test can tell.  This includes pairs
+ * hidden by walls that no single column or row closes off, like a diagonal.</li>
+ * </ul>
+ * A tile's row of answers is computed the first time the tile is asked about, and
+ * packed two bits per pair.  Walls never move, so a row never goes stale.
+ */
+public class VisibilityTable {
+    /** The pair is outside the table, so nothing is known */
+    public static final int UNKNOWN = 0;
+    /** No wall can block a segment between the tiles */
+    public static final int CLEAR = 1;
+    /** Walls block every segment between the tiles */
+    public static final int OCCLUDED = 2;
+    /** Walls block some segments between the tiles */
+    public static final int PARTIAL = 3;
+
+    /** Where a column or row is cut across to look for a solid barrier, as offsets into it */
+    private static final float[] CUTS = {0.05f, 0.5f, 0.95f};
+    /** How far a wall edge may miss a tile edge and still cover it, for rounding */
+    private static final float EDGE_SLACK = 1e-4f;
+    /** Margin added around the width of the hull when looking for a barrier */
+    private static final float HULL_SLACK = 1e-3f;
+
+    /** Board width in tiles */
+    private int width;
+    /** Board height in tiles */
+    private int height;
+    /** Largest x or y distance between two tiles in the table */
+    private int radius;
+    /** Width of the square of tiles a row covers */
+    private int span;
+    /** Tiles touched by a wall, by flat index x*height+y */
+    private boolean[] opaque;
+    /** Tiles completely covered by a wall, by flat index */
+    private boolean[] solid;
+    /** Packed answers for each source tile, or null if not computed yet */
+    private long[][] rows;
+    /** Number of rows computed */
+    private int rowCount;
+
+    /** Creates a table with no walls for a board of the given size
+     *
+     *  @param radius largest x or y distance in tiles between two tiles the table answers for
+     */
+    public VisibilityTable(int width, int height, int radius) {
+        this.width = width;
+        this.height = height;
+        this.radius = radius;
+        span = 2 * radius + 1;
+        opaque = new boolean[width * height];
+        solid = new boolean[width * height];
+        rows = new long[width * height][];
+    }
+
+    /** Returns the largest x or y distance between two tiles the table answers for */
+    public int getRadius() {
+        return radius;
+    }
+
+    /** Marks the tiles touched by the given rectangle (in physics coordinates) as wall */
+    public void addWall(float x, float y, float w, float h) {
+        int x0 = Math.max((int)Math.floor(x), 0);
+        int y0 = Math.max((int)Math.floor(y), 0);
+        int x1 = Math.min((int)Math.ceil(x + w), width);
+        int y1 = Math.min((int)Math.ceil(y + h), height);
+        for (int tx = x0; tx < x1; tx++) {
+            for (int ty = y0; ty < y1; ty++) {
+                opaque[tx * height + ty] = true;
+                if (tx >= x - EDGE_SLACK && tx + 1 <= x + w + EDGE_SLACK
+                        && ty >= y - EDGE_SLACK && ty + 1 <= y + h + EDGE_SLACK) {
+                    solid[tx * height + ty] = true;
+                }
+            }
+        }
+        // Rows within radius of the wall may have been computed without it
+        if (rowCount > 0) {
+            for (int tx = Math.max(x0 - radius, 0); tx < Math.min(x1 + radius, width); tx++) {
+                for (int ty = Math.max(y0 - radius, 0); ty < Math.min(y1 + radius, height); ty++) {
+                    if (rows[tx * height + ty] != null) {
+                        rows[tx * height + ty] = null;
+                        rowCount--;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Returns true if a wall touches tile (x, y); tiles off the board are not */
+    public boolean isOpaque(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height && opaque[x * height + y];
+    }
+
+    /** Returns true if a wall covers all of tile (x, y); tiles off the board are not */
+    public boolean isSolid(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height && solid[x * height + y];
+    }
+
+    /** Returns what the walls hide between the tiles holding the two points
+     *
+     *  @return CLEAR, OCCLUDED, PARTIAL, or UNKNOWN if the pair is not in the table
+     */
+    public int query(float x0, float y0, float x1, float y1) {
+        return query((int)Math.floor(x0), (int)Math.floor(y0), (int)Math.floor(x1), (int)Math.floor(y1));
+    }
+
+    /** Returns what the walls hide between tiles (x0, y0) and (x1, y1)
+     *
+     *  @return CLEAR, OCCLUDED, PARTIAL, or UNKNOWN if the pair is not in the table
+     */
+    public int query(int x0, int y0, int x1, int y1) {
+        if (x0 < 0 || y0 < 0 || x0 >= width || y0 >= height
+                || Math.abs(x1 - x0) > radius || Math.abs(y1 - y0) > radius) {
+            return UNKNOWN;
+        }
+        int source = x0 * height + y0;
+        if (rows[source] == null) {
+            rows[source] = buildRow(x0, y0);
+            rowCount++;
+        }
+        int pair = (x1 - x0 + radius) * span + (y1 - y0 + radius);
+        return (int)(rows[source][pair >> 5] >>> ((pair & 31) << 1)) & 3;
+    }
+
+    /** Computes the answers for every tile within radius of (x0, y0) */
+    private long[] buildRow(int x0, int y0) {
+        long[] row = new long[(span * span + 31) / 32];
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dy = -radius; dy <= radius; dy++) {
+                int pair = (dx + radius) * span + (dy + radius);
+                long code = classify(x0, y0, x0 + dx, y0 + dy);
+                row[pair >> 5] |= code << ((pair & 31) << 1);
+            }
+        }
+        return row;
+    }
+
+    /** Returns CLEAR, OCCLUDED or PARTIAL for the pair of tiles */
+    private int classify(int x0, int y0, int x1, int y1) {
+        if (hullIsClear(x0, y0, x1, y1)) {
+            return CLEAR;
+        } else if (hasBarrier(x0, y0, x1, y1, false) || hasBarrier(y0, x0, y1, x1, true)) {
+            return OCCLUDED;
+        }
+        return PARTIAL;
+    }
+
+    /** Returns true if a column of solid tiles between the two tiles spans their hull
+     *
+     *  Every segment between the tiles crosses each vertical line between them, at a
+     *  height inside the hull's width there.  If the solid tiles of a column cover that
+     *  whole width at some line, every segment hits them.
+     *
+     *  @param rows true if the arguments are given as (y, x), to look for a row instead
+     */
+    private boolean hasBarrier(int u0, int v0, int u1, int v1, boolean rows) {
+        int left = Math.min(u0, u1);
+        int right = Math.max(u0, u1);
+        int leftV = u0 < u1 ? v0 : v1;
+        int rightV = u0 < u1 ? v1 : v0;
+        for (int column = left + 1; column < right; column++) {
+            for (float cut : CUTS) {
+                float t = column + cut;
+                float lo = Float.POSITIVE_INFINITY;
+                float hi = Float.NEGATIVE_INFINITY;
+                // The extremes of the crossing height are at the corners of the two tiles
+                for (int pu = 0; pu <= 1; pu++) {
+                    for (int qu = 0; qu <= 1; qu++) {
+                        float s = (t - left - pu) / (right + qu - left - pu);
+                        for (int pv = 0; pv <= 1; pv++) {
+                            for (int qv = 0; qv <= 1; qv++) {
+                                float v = leftV + pv + (rightV + qv - leftV - pv) * s;
+                                lo = Math.min(lo, v);
+                                hi = Math.max(hi, v);
+                            }
+                        }
+                    }
+                }
+                if (spanIsSolid(column, (int)Math.floor(lo - HULL_SLACK), (int)Math.floor(hi + HULL_SLACK), rows)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns true if no wall overlaps the convex hull of the two tiles
+     *
+     *  The hull is the unit square swept along the segment between the tiles' lower
+     *  left corners.  A wall overlaps it exactly when that segment passes through the
+     *  open 2x2 square centered on the wall's lower left corner.
+     */
+    private boolean hullIsClear(int x0, int y0, int x1, int y1) {
+        for (int wx = Math.min(x0, x1); wx <= Math.max(x0, x1); wx++) {
+            for (int wy = Math.min(y0, y1); wy <= Math.max(y0, y1); wy++) {
+                if (isOpaque(wx, wy) && segmentEntersBox(x0, y0, x1, y1, wx - 1, wy - 1, wx + 1, wy + 1)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Returns true if the segment passes through the inside of the box (Liang-Barsky) */
+    private static boolean segmentEntersBox(float ax, float ay, float bx, float by,
+                                            float minX, float minY, float maxX, float maxY) {
+        float lo = 0;
+        float hi = 1;
+        float[] p = {ax - bx, bx - ax, ay - by, by - ay};
+        float[] q = {ax - minX, maxX - ax, ay - minY, maxY - ay};
+        for (int i = 0; i < 4; i++) {
+            if (p[i] == 0) {
+                // Parallel to this side: inside only if strictly between the lines
+                if (q[i] <= 0) {
+                    return false;
+                }
+                continue;
+            }
+            float t = q[i] / p[i];
+            if (p[i] < 0) {
+                lo = Math.max(lo, t);
+            } else {
+                hi = Math.min(hi, t);
+            }
+        }
+        return lo < hi;
+    }
+
+    /** Returns true if tiles from to to (inclusive) of a column are all solid
+     *
+     *  @param rows true to read a row instead of a column
+     */
+    private boolean spanIsSolid(int column, int from, int to, boolean rows) {
+        for (int v = from; v <= to; v++) {
+            if (!(rows ? isSolid(v, column) : isSolid(column, v))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -31,6 +31,10 @@ public class ConeSource extends ConeLight implements LightSource {
 	
 	/** Copy of the collision filter.  Necessary because the original version is private */
 	protected Filter collisions;
+	/** Fewest rays a light may have (box2dlights' own minimum, which is package private) */
+	private static final int MIN_RAYS = 3;
+	/** The number of rays this light was created with; its meshes are sized for it */
+	protected int maxRays;
 	
 	/**
 	 * Creates light shaped as a circle with default radius, color and cone settings.
@@ -52,6 +56,7 @@ public class ConeSource extends ConeLight implements LightSource {
 	 */
 	public ConeSource(RayHandler rayHandler, int rays) {
 		super(rayHandler, rays, DEFAULT_COLOR, DEFAULT_DISTANCE, 0, 0, 0, DEFAULT_ANGLE);
+		maxRays = rayNum;
 	}
 	
 	/**
@@ -78,6 +83,7 @@ public class ConeSource extends ConeLight implements LightSource {
 	 */
 	public ConeSource(RayHandler rayHandler, int rays, float distance, float coneDegree) {
 		super(rayHandler, rays, DEFAULT_COLOR, distance, 0, 0, 0, coneDegree);
+		maxRays = rayNum;
 	}
 	
 	/**
@@ -106,6 +112,34 @@ public class ConeSource extends ConeLight implements LightSource {
 	public ConeSource(RayHandler rayHandler, int rays, Color color, float distance, 
 					  float x, float y, float direction, float coneDegree) {
 		super(rayHandler, rays, color, distance, x, y, direction, coneDegree);
+		maxRays = rayNum;
+	}
+
+	/**
+	 * Returns the number of rays this light was created with
+	 *
+	 * This is the most rays the light can have.
+	 *
+	 * @return the number of rays this light was created with
+	 */
+	public int getMaxRays() {
+		return maxRays;
+	}
+
+	/**
+	 * Sets the number of rays this light casts, for level of detail
+	 *
+	 * The count is clamped to the number of rays the light was created with, as the
+	 * light meshes were sized for that many, and cannot be less than MIN_RAYS.  Changing
+	 * the count reallocates the ray arrays, so it should not change every frame.
+	 *
+	 * @param rays	the number of rays
+	 */
+	public void setRayCount(int rays) {
+		rays = Math.max(Math.min(rays, maxRays), MIN_RAYS);
+		if (rays == rayNum) return;
+		setRayNum(rays);
+		dirty = true;
 	}
 	
 	@Override
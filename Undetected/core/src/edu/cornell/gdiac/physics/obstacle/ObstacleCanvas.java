@@ -684,6 +684,49 @@ public class ObstacleCanvas {
 		spriteBatch.draw(region, region.getRegionWidth(), region.getRegionHeight(), local);
 	}
 
+	/**
+	 * Draws a sprite cache built ahead of time, such as a static floor.
+	 *
+	 * The cache is drawn with the current transform and blend state.  Anything drawn
+	 * before it in this pass is flushed first, so the cache appears on top of it.
+	 *
+	 * @param cache The sprite cache to draw
+	 * @param id 	The id of the cached sprites (from SpriteCache.endCache())
+	 */
+	public void draw(SpriteCache cache, int id) {
+		draw(cache, id, id + 1);
+	}
+
+	/**
+	 * Draws a range of caches from a sprite cache built ahead of time.
+	 *
+	 * This is the same as drawing each cache in turn, but only pauses the batch once.
+	 *
+	 * @param cache The sprite cache to draw
+	 * @param first The id of the first cache to draw
+	 * @param last 	The id after the last cache to draw
+	 */
+	public void draw(SpriteCache cache, int first, int last) {
+		if (active != DrawPass.STANDARD) {
+			Gdx.app.error("GameCanvas", "Cannot draw without active begin()", new IllegalStateException());
+			return;
+		}
+
+		// The cache and the batch cannot share the GPU state, so pause the batch
+		spriteBatch.end();
+		cache.setProjectionMatrix(spriteBatch.getProjectionMatrix());
+		cache.setTransformMatrix(spriteBatch.getTransformMatrix());
+		Gdx.gl.glEnable(GL20.GL_BLEND);
+		Gdx.gl.glBlendFunc(spriteBatch.getBlendSrcFunc(), spriteBatch.getBlendDstFunc());
+		cache.begin();
+		for (int id = first; id < last; id++) {
+			cache.draw(id);
+		}
+		cache.end();
+		Gdx.gl.glDisable(GL20.GL_BLEND);
+		spriteBatch.begin();
+	}
+
 	/**
 	 * Draws the tinted texture with the given transformations
 	 *
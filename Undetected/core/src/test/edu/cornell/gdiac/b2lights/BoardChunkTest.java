@@ -0,0 +1,222 @@
+package edu.cornell.gdiac.b2lights;
+
+import com.badlogic.gdx.utils.IntArray;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the chunked Board layers and its change journals against dense references.
+ *
+ * Most changes land in one corner of the board, so many chunks are never written and
+ * must read as empty.  The reference keeps every tile's walkability, occupant and
+ * versions in flat arrays, and a log of every walkability change.
+ */
+public class BoardChunkTest {
+    /** Board size, in tiles, not a multiple of the chunk size */
+    private static final int WIDTH = 70;
+    private static final int HEIGHT = 45;
+    /** Corner most changes land in, in tiles */
+    private static final int BUSY = 30;
+    /** Steps of random changes */
+    private static final int STEPS = 200;
+    /** Occupant types a guard can walk through */
+    private static final int WALKABLE = (1 << 0) | (1 << 2) | (1 << 3) | (1 << 4) | (1 << 6) | (1 << 8);
+
+    private Board board;
+    private Random random;
+    /** Walkability of each tile after the last step */
+    private boolean[] walkable;
+    /** Occupant of each tile after the last step */
+    private int[] occupants;
+    /** Walk version and step of each tile's last change */
+    private int[] tileVersions;
+    private int[] occupantVersions;
+    /** Every walkability change so far, as parallel lists */
+    private IntArray changedTiles;
+    private IntArray changedVersions;
+    /** Walk version the reference is at */
+    private int version;
+    /** Whether each chunk was written, and the walk version it was first written in */
+    private boolean[] written;
+    private int[] writtenVersions;
+
+    @Before
+    public void setUp() {
+        board = new Board(WIDTH, HEIGHT, 1);
+        random = new Random(13);
+        walkable = new boolean[WIDTH * HEIGHT];
+        occupants = new int[WIDTH * HEIGHT];
+        tileVersions = new int[WIDTH * HEIGHT];
+        occupantVersions = new int[WIDTH * HEIGHT];
+        changedTiles = new IntArray();
+        changedVersions = new IntArray();
+        int chunks = chunkOf(WIDTH - 1, HEIGHT - 1) + 1;
+        written = new boolean[chunks];
+        writtenVersions = new int[chunks];
+    }
+
+    /** Occupants, versions and both journals match the dense reference every step */
+    @Test
+    public void journalsMatchDenseReference() {
+        // A hole in the far corner, which is never written to
+        board.setInvalidTiles(new int[] {WIDTH - 3, HEIGHT - 3, WIDTH - 2, HEIGHT - 3, WIDTH - 3, HEIGHT - 2});
+        IntArray changes = new IntArray();
+        for (int step = 0; step < STEPS; step++) {
+            int count = step == 0 ? 0 : 1 + random.nextInt(8);
+            for (int i = 0; i < count; i++) {
+                boolean far = random.nextInt(20) == 0;
+                int x = random.nextInt(far ? WIDTH - 4 : BUSY);
+                int y = random.nextInt(far ? HEIGHT - 4 : BUSY);
+                int index = board.tileIndex(x, y);
+                write(x, y);
+                if (random.nextInt(6) == 0) {
+                    board.setOccupiedTiles(x, y, 1);
+                } else if (random.nextBoolean() && board.getOccupant(x, y) == 7) {
+                    board.removeDynamicOccupant(index, 7);
+                } else {
+                    board.addDynamicOccupant(index, 7);
+                }
+            }
+            board.refreshWalkable();
+            IntArray expected = endStep(step + 1);
+
+            assertEquals(step + 1, board.getStep());
+            assertEquals(version, board.getWalkVersion());
+            assertEquals(new HashSet<>(asList(expected)), new HashSet<>(asList(board.getChangedTiles())));
+            for (int i = 0; i < board.getChangedTiles().size; i++) {
+                int index = board.getChangedTiles().get(i);
+                assertEquals(occupants[index], board.getNewOccupants().get(i));
+                assertTrue(board.getOldOccupants().get(i) != occupants[index]);
+            }
+            int[] latest = latestInChunks();
+            for (int index = 0; index < WIDTH * HEIGHT; index++) {
+                assertEquals(occupantVersions[index], board.getOccupantVersion(index));
+                assertEquals(reportedVersion(index, latest), board.getTileVersion(index));
+            }
+            for (int since = Math.max(0, version - 4); since <= version; since++) {
+                changes.clear();
+                if (board.getChangesSince(since, changes)) {
+                    assertEquals(changedSince(since), new HashSet<>(asList(changes)));
+                }
+            }
+            changes.clear();
+            assertTrue(board.getChangesSince(version, changes));
+            assertEquals(0, changes.size);
+        }
+        assertTrue(version > STEPS / 2);
+    }
+
+    /** Tiles of chunks never written to read as empty, walkable floor */
+    @Test
+    public void missingChunksReadEmpty() {
+        board.setOccupiedTiles(2, 3, 1);
+        board.refreshWalkable();
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                boolean wall = x == 2 && y == 3;
+                assertEquals(wall ? 1 : 0, board.getOccupant(x, y));
+                assertEquals(!wall, board.isWalkable(x, y));
+                // The wall went up in the first step, which only made the floor walkable
+                assertEquals(wall ? 1 : 0, board.getOccupantVersion(board.tileIndex(x, y)));
+                assertEquals(wall ? 0 : 1, board.getTileVersion(board.tileIndex(x, y)));
+            }
+        }
+        assertEquals(1, board.getOccupant(-1, 0));
+        assertEquals(1, board.getOccupant(WIDTH, 0));
+    }
+
+    /** Notes that the chunk holding (x,y) gets written this step */
+    private void write(int x, int y) {
+        int chunk = chunkOf(x, y);
+        if (!written[chunk]) {
+            written[chunk] = true;
+            writtenVersions[chunk] = latestInChunks()[chunk];
+        }
+    }
+
+    /** Brings the reference up to date with the board, and returns the tiles whose occupant changed */
+    private IntArray endStep(int step) {
+        IntArray changed = new IntArray();
+        boolean any = false;
+        for (int index = 0; index < WIDTH * HEIGHT; index++) {
+            int x = board.tileX(index);
+            int y = board.tileY(index);
+            int occupant = board.getOccupant(x, y);
+            if (occupant != occupants[index]) {
+                occupants[index] = occupant;
+                occupantVersions[index] = step;
+                changed.add(index);
+            }
+            boolean open = board.isSafeAt(x, y) && ((WALKABLE >> occupant) & 1) != 0;
+            assertEquals(open, board.isWalkable(x, y));
+            if (open != walkable[index]) {
+                if (!any) {
+                    version++;
+                    any = true;
+                }
+                walkable[index] = open;
+                tileVersions[index] = version;
+                changedTiles.add(index);
+                changedVersions.add(version);
+            }
+        }
+        return changed;
+    }
+
+    /** Returns the tile version the board should report
+     *
+     *  A tile in a chunk never written to reports the latest change in its chunk, and a
+     *  written chunk starts its tiles off at the latest change before it was written.
+     */
+    private int reportedVersion(int index, int[] latest) {
+        int chunk = chunkOf(board.tileX(index), board.tileY(index));
+        if (!written[chunk]) {
+            return latest[chunk];
+        }
+        return Math.max(writtenVersions[chunk], tileVersions[index]);
+    }
+
+    /** Returns the latest walk version in which a tile of each chunk changed */
+    private int[] latestInChunks() {
+        int[] latest = new int[written.length];
+        for (int index = 0; index < WIDTH * HEIGHT; index++) {
+            int chunk = chunkOf(board.tileX(index), board.tileY(index));
+            latest[chunk] = Math.max(latest[chunk], tileVersions[index]);
+        }
+        return latest;
+    }
+
+    /** Returns the chunk holding (x,y), numbered as the board numbers them */
+    private static int chunkOf(int x, int y) {
+        return (x / Board.CHUNK_SIZE) * ((HEIGHT + Board.CHUNK_SIZE - 1) / Board.CHUNK_SIZE) + y / Board.CHUNK_SIZE;
+    }
+
+    /** Returns the tiles that changed walkability after the given version */
+    private Set<Integer> changedSince(int since) {
+        Set<Integer> tiles = new HashSet<>();
+        for (int i = 0; i < changedTiles.size; i++) {
+            if (changedVersions.get(i) > since) {
+                tiles.add(changedTiles.get(i));
+            }
+        }
+        return tiles;
+    }
+
+    /** Returns the items of an IntArray as a list */
+    private static List<Integer> asList(IntArray array) {
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < array.size; i++) {
+            list.add(array.get(i));
+        }
+        return list;
+    }
+}
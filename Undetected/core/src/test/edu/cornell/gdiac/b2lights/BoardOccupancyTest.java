@@ -0,0 +1,156 @@
+package edu.cornell.gdiac.b2lights;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the Board occupant layers and component labels against dense references.
+ *
+ * The reference keeps one static occupant and a count of every moving type per tile,
+ * resolves them with the priority list by hand, and labels components with a fresh
+ * breadth-first flood after every step.
+ */
+public class BoardOccupancyTest {
+    /** Board size, in tiles */
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 29;
+    /** Occupant types, highest priority first */
+    private static final int[] PRIORITY = {1, 9, 7, 5, 2, 3, 8, 6, 4, 0};
+    /** Types that move */
+    private static final int[] MOVING = {2, 3, 5, 6, 7};
+    /** Steps of random changes */
+    private static final int STEPS = 300;
+
+    private Board board;
+    private Random random;
+    /** Static occupant of each tile */
+    private int[] still;
+    /** Number of moving objects of each type on each tile, as [type][tile] */
+    private int[][] moving;
+
+    @Before
+    public void setUp() {
+        board = new Board(WIDTH, HEIGHT, 1);
+        random = new Random(9);
+        still = new int[WIDTH * HEIGHT];
+        moving = new int[10][WIDTH * HEIGHT];
+    }
+
+    /** Every tile reports the highest priority occupant of its two layers */
+    @Test
+    public void occupantsMatchLayers() {
+        for (int step = 0; step < STEPS; step++) {
+            change(10);
+            for (int index = 0; index < WIDTH * HEIGHT; index++) {
+                assertEquals(resolve(index), board.getOccupant(board.tileX(index), board.tileY(index)));
+            }
+        }
+    }
+
+    /** Components join and split exactly as a fresh flood fill says, as walls and doors change */
+    @Test
+    public void componentsMatchFloodFill() {
+        for (int step = 0; step < STEPS; step++) {
+            // Mostly a few tiles, now and then enough to relabel everything
+            change(step % 50 == 0 ? WIDTH * HEIGHT / 6 : 1 + random.nextInt(6));
+            board.refreshWalkable();
+            int[] labels = flood();
+            for (int i = 0; i < 100; i++) {
+                int a = random.nextInt(WIDTH * HEIGHT);
+                int b = random.nextInt(WIDTH * HEIGHT);
+                int ax = board.tileX(a);
+                int ay = board.tileY(a);
+                int bx = board.tileX(b);
+                int by = board.tileY(b);
+                assertEquals(labels[a] >= 0, board.getComponent(ax, ay) >= 0);
+                assertEquals(labels[a] >= 0 && labels[a] == labels[b],
+                        board.getComponent(ax, ay) >= 0 && board.getComponent(ax, ay) == board.getComponent(bx, by));
+            }
+        }
+        assertTrue(board.getWalkVersion() > STEPS / 2);
+    }
+
+    /** Makes count random changes: a wall, or a moving object arriving or leaving */
+    private void change(int count) {
+        for (int i = 0; i < count; i++) {
+            int index = random.nextInt(WIDTH * HEIGHT);
+            int x = board.tileX(index);
+            int y = board.tileY(index);
+            int roll = random.nextInt(10);
+            if (roll == 0) {
+                int type = random.nextBoolean() ? 1 : 8;
+                board.setOccupiedTiles(x, y, type);
+                if (rank(type) < rank(still[index])) {
+                    still[index] = type;
+                }
+            } else {
+                int type = MOVING[random.nextInt(MOVING.length)];
+                if (roll < 5 && moving[type][index] > 0) {
+                    board.removeDynamicOccupant(index, type);
+                    moving[type][index]--;
+                } else {
+                    board.addDynamicOccupant(index, type);
+                    moving[type][index]++;
+                }
+            }
+        }
+    }
+
+    /** Returns the reference occupant of a tile */
+    private int resolve(int index) {
+        int best = still[index];
+        for (int type : MOVING) {
+            if (moving[type][index] > 0 && rank(type) < rank(best)) {
+                best = type;
+            }
+        }
+        return best;
+    }
+
+    /** Returns the position of a type in PRIORITY */
+    private static int rank(int type) {
+        for (int i = 0; i < PRIORITY.length; i++) {
+            if (PRIORITY[i] == type) {
+                return i;
+            }
+        }
+        return PRIORITY.length;
+    }
+
+    /** Labels the walkable tiles by breadth-first flood, -1 for the rest */
+    private int[] flood() {
+        int[] labels = new int[WIDTH * HEIGHT];
+        Arrays.fill(labels, -1);
+        int[] queue = new int[WIDTH * HEIGHT];
+        int count = 0;
+        for (int seed = 0; seed < WIDTH * HEIGHT; seed++) {
+            if (labels[seed] >= 0 || !board.isWalkable(board.tileX(seed), board.tileY(seed))) {
+                continue;
+            }
+            int head = 0;
+            int tail = 0;
+            labels[seed] = count;
+            queue[tail++] = seed;
+            while (head < tail) {
+                int index = queue[head++];
+                int x = board.tileX(index);
+                int y = board.tileY(index);
+                int[][] steps = {{x + 1, y}, {x - 1, y}, {x, y + 1}, {x, y - 1}};
+                for (int[] next : steps) {
+                    if (board.isWalkable(next[0], next[1]) && labels[board.tileIndex(next[0], next[1])] < 0) {
+                        labels[board.tileIndex(next[0], next[1])] = count;
+                        queue[tail++] = board.tileIndex(next[0], next[1]);
+                    }
+                }
+            }
+            count++;
+        }
+        return labels;
+    }
+}
@@ -0,0 +1,159 @@
+package edu.cornell.gdiac.b2lights;
+
+import com.badlogic.gdx.utils.IntArray;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that repaired flow fields give the same routes as fields rebuilt from scratch.
+ *
+ * Two services share a board whose doors open and close every step; one repairs its
+ * fields in place and the other rebuilds them.  Both are also checked against a plain
+ * breadth-first search, so a route must be a shortest walk, not just an agreed one.
+ */
+public class FlowFieldServiceTest {
+    /** Board size, in tiles */
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 36;
+    /** Goals the guards head for */
+    private static final int GOALS = 6;
+    /** Doors scattered over the board */
+    private static final int DOORS = 120;
+    /** Steps of door toggling */
+    private static final int STEPS = 150;
+    /** Routes traced per step */
+    private static final int ROUTES = 20;
+
+    private Board board;
+    private FlowFieldService repaired;
+    private FlowFieldService rebuilt;
+    private Random random;
+
+    @Before
+    public void setUp() {
+        board = new Board(WIDTH, HEIGHT, 1);
+        random = new Random(11);
+        for (int i = 0; i < WIDTH * HEIGHT / 5; i++) {
+            board.setOccupiedTiles(random.nextInt(WIDTH), random.nextInt(HEIGHT), 1);
+        }
+        board.refreshWalkable();
+        repaired = new FlowFieldService(board);
+        rebuilt = new FlowFieldService(board);
+        rebuilt.setIncremental(false);
+    }
+
+    /** Repair and rebuild trace the same shortest routes while doors toggle */
+    @Test
+    public void repairMatchesRebuild() {
+        int[] goals = new int[GOALS];
+        for (int i = 0; i < GOALS; i++) {
+            goals[i] = randomWalkable();
+        }
+        int[] doors = new int[DOORS];
+        boolean[] closed = new boolean[DOORS];
+        for (int i = 0; i < DOORS; i++) {
+            doors[i] = board.tileIndex(random.nextInt(WIDTH), random.nextInt(HEIGHT));
+            board.addDynamicOccupant(doors[i], 6);
+        }
+
+        IntArray first = new IntArray();
+        IntArray second = new IntArray();
+        int traced = 0;
+        for (int step = 0; step < STEPS; step++) {
+            // A switch flips a handful of doors, now and then a lot of them
+            int flips = step % 25 == 0 ? DOORS / 2 : 1 + random.nextInt(4);
+            for (int j = 0; j < flips; j++) {
+                int door = random.nextInt(DOORS);
+                board.removeDynamicOccupant(doors[door], closed[door] ? 7 : 6);
+                closed[door] = !closed[door];
+                board.addDynamicOccupant(doors[door], closed[door] ? 7 : 6);
+            }
+            board.refreshWalkable();
+
+            for (int j = 0; j < ROUTES; j++) {
+                int goal = goals[random.nextInt(GOALS)];
+                int start = randomWalkable();
+                int[] dist = distances(goal);
+                first.clear();
+                second.clear();
+                boolean found = repaired.tracePath(board.tileX(start), board.tileY(start),
+                        board.tileX(goal), board.tileY(goal), first);
+                assertEquals(found, rebuilt.tracePath(board.tileX(start), board.tileY(start),
+                        board.tileX(goal), board.tileY(goal), second));
+                assertEquals(dist[start] >= 0, found);
+                if (found) {
+                    traced++;
+                    assertArrayEquals(second.toArray(), first.toArray());
+                    assertEquals(dist[start] + 1, first.size);
+                }
+            }
+        }
+        // Most routes must be found, or the comparison above proves little
+        assertTrue(traced > STEPS * ROUTES / 2);
+    }
+
+    /** A goal walled in after its field was built can no longer be reached */
+    @Test
+    public void closedGoalIsUnreachable() {
+        int goal = randomWalkable();
+        int start = randomWalkable();
+        int x = board.tileX(goal);
+        int y = board.tileY(goal);
+        IntArray out = new IntArray();
+        repaired.tracePath(board.tileX(start), board.tileY(start), x, y, out);
+        board.addDynamicOccupant(goal, 7);
+        board.refreshWalkable();
+        out.clear();
+        assertFalse(repaired.tracePath(board.tileX(start), board.tileY(start), x, y, out));
+        board.removeDynamicOccupant(goal, 7);
+        board.refreshWalkable();
+        assertEquals(distances(goal)[start] >= 0,
+                repaired.tracePath(board.tileX(start), board.tileY(start), x, y, out));
+    }
+
+    /** Returns a random walkable tile, as a flat index */
+    private int randomWalkable() {
+        while (true) {
+            int x = random.nextInt(WIDTH);
+            int y = random.nextInt(HEIGHT);
+            if (board.isWalkable(x, y)) {
+                return board.tileIndex(x, y);
+            }
+        }
+    }
+
+    /** Returns the walking distance of every tile to the goal, or -1, by breadth-first search */
+    private int[] distances(int goal) {
+        int[] dist = new int[WIDTH * HEIGHT];
+        Arrays.fill(dist, -1);
+        if (!board.isWalkable(board.tileX(goal), board.tileY(goal))) {
+            return dist;
+        }
+        int[] queue = new int[WIDTH * HEIGHT];
+        int head = 0;
+        int tail = 0;
+        dist[goal] = 0;
+        queue[tail++] = goal;
+        while (head < tail) {
+            int index = queue[head++];
+            int x = board.tileX(index);
+            int y = board.tileY(index);
+            int[][] steps = {{x + 1, y}, {x - 1, y}, {x, y + 1}, {x, y - 1}};
+            for (int[] next : steps) {
+                if (board.isWalkable(next[0], next[1]) && dist[board.tileIndex(next[0], next[1])] < 0) {
+                    dist[board.tileIndex(next[0], next[1])] = dist[index] + 1;
+                    queue[tail++] = board.tileIndex(next[0], next[1]);
+                }
+            }
+        }
+        return dist;
+    }
+}
@@ -0,0 +1,211 @@
+package edu.cornell.gdiac.b2lights;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.Box2D;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.PolygonShape;
+import com.badlogic.gdx.physics.box2d.RayCastCallback;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.IntArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks GridLineOfSight against a Box2D raycast over the same level.
+ *
+ * Each opaque tile gets a static body, and random segments between empty tiles are
+ * tested both ways.  The two are known to disagree in two cases, which are skipped
+ * or allowed, as long as they stay rare:
+ *
+ *  - Corner clips.  A segment passing within CORNER_MARGIN of a tile corner may touch
+ *    a body the traversal steps around, or the other way round.
+ *  - Bodies smaller than their tile, like decorations and boxes.  The grid blocks the
+ *    whole tile, so it can report blocked where the ray passes beside the body.  The
+ *    grid is never the one that sees through.
+ */
+public class GridLineOfSightTest {
+    /** Board size, in tiles */
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 12;
+    /** Segments tested per case */
+    private static final int SEGMENTS = 5000;
+    /** Segments this close to a tile corner are corner clips */
+    private static final float CORNER_MARGIN = 1e-3f;
+    /** Half width of a body smaller than its tile */
+    private static final float SMALL_HALF = 0.2f;
+
+    private Board board;
+    private World world;
+    private GridLineOfSight sight;
+    private Random random;
+    /** Tiles that hold no occupant, as flat indices */
+    private IntArray empty;
+    /** Whether the last raycast hit a body */
+    private boolean hit;
+
+    /** Stops at the first body the ray touches */
+    private final RayCastCallback callback = new RayCastCallback() {
+        @Override
+        public float reportRayFixture(Fixture fixture, Vector2 point, Vector2 normal, float fraction) {
+            hit = true;
+            return 0;
+        }
+    };
+
+    @BeforeClass
+    public static void loadNatives() {
+        Box2D.init();
+    }
+
+    @Before
+    public void setUp() {
+        board = new Board(WIDTH, HEIGHT, 1);
+        world = new World(new Vector2(0, 0), false);
+        sight = new GridLineOfSight(board);
+        random = new Random(7);
+        empty = new IntArray();
+    }
+
+    @After
+    public void tearDown() {
+        world.dispose();
+    }
+
+    /** Full tile walls and boxes agree with the raycast on every segment but corner clips */
+    @Test
+    public void fullTilesMatchRaycast() {
+        fill(0.5f);
+        int clips = 0;
+        for (int i = 0; i < SEGMENTS; i++) {
+            Vector2 start = randomPoint();
+            Vector2 end = randomPoint();
+            if (nearCorner(start, end)) {
+                clips++;
+                continue;
+            }
+            boolean clear = sight.isClear(start.x, start.y, end.x, end.y, GridLineOfSight.GUARD_OPAQUE);
+            assertEquals("segment " + start + " to " + end, !raycast(start, end), clear);
+        }
+        // Clips only come from segments grazing a corner, so nearly every segment is compared
+        assertTrue(clips + " corner clips", clips < SEGMENTS / 20);
+    }
+
+    /** With bodies smaller than their tiles the grid may only be more conservative */
+    @Test
+    public void smallBodiesOnlyBlockMore() {
+        fill(SMALL_HALF);
+        int conservative = 0;
+        for (int i = 0; i < SEGMENTS; i++) {
+            Vector2 start = randomPoint();
+            Vector2 end = randomPoint();
+            boolean clear = sight.isClear(start.x, start.y, end.x, end.y, GridLineOfSight.GUARD_OPAQUE);
+            boolean blocked = raycast(start, end);
+            if (blocked) {
+                assertFalse("segment " + start + " to " + end, clear);
+            } else if (!clear) {
+                conservative++;
+            }
+        }
+        // The grid must block some segments the bodies miss, but still let most through
+        assertTrue(conservative > 0);
+        assertTrue(conservative + " blocked by the grid only", conservative < SEGMENTS / 2);
+    }
+
+    /** A segment beside a small body still crosses its tile, so only the grid blocks it */
+    @Test
+    public void smallBodyBlocksItsWholeTile() {
+        board.setOccupiedTiles(2, 2, 1);
+        addBody(2, 2, SMALL_HALF);
+        Vector2 start = new Vector2(1.5f, 2.1f);
+        Vector2 end = new Vector2(3.5f, 2.1f);
+        assertFalse(raycast(start, end));
+        assertFalse(sight.isClear(start.x, start.y, end.x, end.y, GridLineOfSight.GUARD_OPAQUE));
+    }
+
+    /** The tiles of the end points never block, as they hold the viewer and the target */
+    @Test
+    public void endTilesNeverBlock() {
+        board.setOccupiedTiles(1, 1, 1);
+        board.setOccupiedTiles(4, 1, 1);
+        assertTrue(sight.isClear(1.5f, 1.5f, 4.5f, 1.5f, GridLineOfSight.GUARD_OPAQUE));
+        board.setOccupiedTiles(2, 1, 1);
+        assertFalse(sight.isClear(1.5f, 1.5f, 4.5f, 1.5f, GridLineOfSight.GUARD_OPAQUE));
+    }
+
+    /** Scatters walls and boxes over the board, each with a square body of the given half width */
+    private void fill(float half) {
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                int roll = random.nextInt(10);
+                if (roll < 2) {
+                    board.setOccupiedTiles(x, y, 1);
+                    addBody(x, y, half);
+                } else if (roll == 2) {
+                    board.addDynamicOccupant(board.tileIndex(x, y), 5);
+                    addBody(x, y, half);
+                } else {
+                    empty.add(board.tileIndex(x, y));
+                }
+            }
+        }
+    }
+
+    /** Adds a static square body centered in tile (x, y) */
+    private void addBody(int x, int y, float half) {
+        BodyDef def = new BodyDef();
+        def.type = BodyDef.BodyType.StaticBody;
+        def.position.set(x + 0.5f, y + 0.5f);
+        Body body = world.createBody(def);
+        PolygonShape shape = new PolygonShape();
+        shape.setAsBox(half, half);
+        body.createFixture(shape, 0);
+        shape.dispose();
+    }
+
+    /** Returns a random point inside a random empty tile */
+    private Vector2 randomPoint() {
+        int index = empty.get(random.nextInt(empty.size));
+        return new Vector2(board.tileX(index) + 0.05f + 0.9f * random.nextFloat(),
+                board.tileY(index) + 0.05f + 0.9f * random.nextFloat());
+    }
+
+    /** Returns true if a body lies on the segment */
+    private boolean raycast(Vector2 start, Vector2 end) {
+        hit = false;
+        world.rayCast(callback, start, end);
+        return hit;
+    }
+
+    /** Returns true if the segment passes within CORNER_MARGIN of any tile corner */
+    private static boolean nearCorner(Vector2 start, Vector2 end) {
+        int x0 = (int)Math.floor(Math.min(start.x, end.x));
+        int x1 = (int)Math.ceil(Math.max(start.x, end.x));
+        int y0 = (int)Math.floor(Math.min(start.y, end.y));
+        int y1 = (int)Math.ceil(Math.max(start.y, end.y));
+        float dx = end.x - start.x;
+        float dy = end.y - start.y;
+        float length2 = dx * dx + dy * dy;
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) {
+                float t = length2 == 0 ? 0 : ((x - start.x) * dx + (y - start.y) * dy) / length2;
+                t = Math.max(0, Math.min(1, t));
+                float px = start.x + t * dx - x;
+                float py = start.y + t * dy - y;
+                if (px * px + py * py < CORNER_MARGIN * CORNER_MARGIN) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
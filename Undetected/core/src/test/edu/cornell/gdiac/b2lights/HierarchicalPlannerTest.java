@@ -0,0 +1,173 @@
+package edu.cornell.gdiac.b2lights;
+
+import com.badlogic.gdx.utils.IntArray;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks HierarchicalPlanner routes against a plain breadth-first search.
+ *
+ * A route must exist exactly when the search finds one, walk from the start to the
+ * goal one walkable neighbor at a time, and be no shorter than the search's.  A
+ * planner sharing the portal graph, as the planning workers do, must plan the same
+ * routes as the planner that owns it.
+ */
+public class HierarchicalPlannerTest {
+    /** Board size, in tiles, spanning several clusters and a partial one */
+    private static final int WIDTH = 50;
+    private static final int HEIGHT = 40;
+    /** Rounds of board changes */
+    private static final int ROUNDS = 20;
+    /** Routes planned per round */
+    private static final int ROUTES = 40;
+
+    private Board board;
+    private HierarchicalPlanner planner;
+    private Random random;
+
+    @Before
+    public void setUp() {
+        board = new Board(WIDTH, HEIGHT, 1);
+        random = new Random(5);
+        // Long walls with gaps, so routes have to find their way between clusters
+        for (int x = 6; x < WIDTH; x += 12) {
+            for (int y = 0; y < HEIGHT; y++) {
+                if (random.nextInt(8) != 0) {
+                    board.setOccupiedTiles(x, y, 1);
+                }
+            }
+        }
+        for (int i = 0; i < WIDTH * HEIGHT / 8; i++) {
+            board.setOccupiedTiles(random.nextInt(WIDTH), random.nextInt(HEIGHT), 1);
+        }
+        board.refreshWalkable();
+        planner = new HierarchicalPlanner(board);
+    }
+
+    /** Routes are walkable, end where asked and exist exactly when a search finds one */
+    @Test
+    public void routesMatchFlatSearch() {
+        IntArray route = new IntArray();
+        int found = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            toggleDoors(8);
+            for (int i = 0; i < ROUTES; i++) {
+                int start = randomWalkable();
+                int goal = randomWalkable();
+                int[] dist = distances(goal);
+                route.clear();
+                boolean planned = planner.plan(board.tileX(start), board.tileY(start),
+                        board.tileX(goal), board.tileY(goal), route);
+                assertEquals(dist[start] >= 0, planned);
+                if (planned) {
+                    found++;
+                    assertWalk(route, start, goal);
+                    assertTrue(route.size >= dist[start] + 1);
+                }
+            }
+        }
+        assertTrue(found > ROUNDS * ROUTES / 4);
+    }
+
+    /** A planner sharing the portal graph plans the owner's routes once it is refreshed */
+    @Test
+    public void sharedGraphMatchesOwner() {
+        HierarchicalPlanner shared = new HierarchicalPlanner(planner);
+        IntArray first = new IntArray();
+        IntArray second = new IntArray();
+        for (int round = 0; round < ROUNDS; round++) {
+            int version = board.getWalkVersion();
+            toggleDoors(8);
+            int start = randomWalkable();
+            int goal = randomWalkable();
+            boolean changed = board.getWalkVersion() != version;
+            if (changed && board.canReach(board.tileX(start), board.tileY(start), board.tileX(goal), board.tileY(goal))) {
+                // The graph is out of date until the owner refreshes it
+                assertFalse(shared.plan(board.tileX(start), board.tileY(start),
+                        board.tileX(goal), board.tileY(goal), second));
+            }
+            planner.refresh();
+            for (int i = 0; i < ROUTES; i++) {
+                start = randomWalkable();
+                goal = randomWalkable();
+                first.clear();
+                second.clear();
+                assertEquals(planner.plan(board.tileX(start), board.tileY(start), board.tileX(goal), board.tileY(goal), first),
+                        shared.plan(board.tileX(start), board.tileY(start), board.tileX(goal), board.tileY(goal), second));
+                assertArrayEquals(first.toArray(), second.toArray());
+            }
+        }
+    }
+
+    /** Opens or closes doors on count random tiles and ends the step */
+    private void toggleDoors(int count) {
+        for (int i = 0; i < count; i++) {
+            int index = board.tileIndex(random.nextInt(WIDTH), random.nextInt(HEIGHT));
+            if (board.getOccupant(board.tileX(index), board.tileY(index)) == 7) {
+                board.removeDynamicOccupant(index, 7);
+            } else {
+                board.addDynamicOccupant(index, 7);
+            }
+        }
+        board.refreshWalkable();
+    }
+
+    /** Asserts that the route steps between walkable neighbors from start to goal */
+    private void assertWalk(IntArray route, int start, int goal) {
+        assertEquals(start, route.first());
+        assertEquals(goal, route.peek());
+        for (int i = 0; i < route.size; i++) {
+            int x = board.tileX(route.get(i));
+            int y = board.tileY(route.get(i));
+            assertTrue(board.isWalkable(x, y));
+            if (i > 0) {
+                int px = board.tileX(route.get(i - 1));
+                int py = board.tileY(route.get(i - 1));
+                assertEquals(1, Math.abs(x - px) + Math.abs(y - py));
+            }
+        }
+    }
+
+    /** Returns a random walkable tile, as a flat index */
+    private int randomWalkable() {
+        while (true) {
+            int x = random.nextInt(WIDTH);
+            int y = random.nextInt(HEIGHT);
+            if (board.isWalkable(x, y)) {
+                return board.tileIndex(x, y);
+            }
+        }
+    }
+
+    /** Returns the walking distance of every tile to the goal, or -1, by breadth-first search */
+    private int[] distances(int goal) {
+        int[] dist = new int[WIDTH * HEIGHT];
+        Arrays.fill(dist, -1);
+        int[] queue = new int[WIDTH * HEIGHT];
+        int head = 0;
+        int tail = 0;
+        dist[goal] = 0;
+        queue[tail++] = goal;
+        while (head < tail) {
+            int index = queue[head++];
+            int x = board.tileX(index);
+            int y = board.tileY(index);
+            int[][] steps = {{x + 1, y}, {x - 1, y}, {x, y + 1}, {x, y - 1}};
+            for (int[] next : steps) {
+                if (board.isWalkable(next[0], next[1]) && dist[board.tileIndex(next[0], next[1])] < 0) {
+                    dist[board.tileIndex(next[0], next[1])] = dist[index] + 1;
+                    queue[tail++] = board.tileIndex(next[0], next[1]);
+                }
+            }
+        }
+        return dist;
+    }
+}
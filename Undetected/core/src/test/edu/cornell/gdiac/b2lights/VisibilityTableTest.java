@@ -0,0 +1,162 @@
+package edu.cornell.gdiac.b2lights;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.Box2D;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.PolygonShape;
+import com.badlogic.gdx.physics.box2d.RayCastCallback;
+import com.badlogic.gdx.physics.box2d.World;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the VisibilityTable classifications against a Box2D raycast over the same walls.
+ *
+ * A CLEAR pair must have no segment between its tiles that hits a wall, and an
+ * OCCLUDED pair no segment that misses every wall.  Segments are sampled at random
+ * inside the two tiles, and from corner to corner, where a missed gap would show.
+ */
+public class VisibilityTableTest {
+    /** Board size, in tiles */
+    private static final int WIDTH = 20;
+    private static final int HEIGHT = 20;
+    /** Table radius, in tiles */
+    private static final int RADIUS = 6;
+    /** Pairs of tiles tested */
+    private static final int PAIRS = 2000;
+    /** Random segments tested per pair */
+    private static final int SEGMENTS = 64;
+
+    private World world;
+    private VisibilityTable table;
+    private Random random;
+    /** Whether the last raycast hit a wall */
+    private boolean hit;
+
+    /** Stops at the first wall the ray touches */
+    private final RayCastCallback callback = new RayCastCallback() {
+        @Override
+        public float reportRayFixture(Fixture fixture, Vector2 point, Vector2 normal, float fraction) {
+            hit = true;
+            return 0;
+        }
+    };
+
+    @BeforeClass
+    public static void loadNatives() {
+        Box2D.init();
+    }
+
+    @Before
+    public void setUp() {
+        world = new World(new Vector2(0, 0), false);
+        table = new VisibilityTable(WIDTH, HEIGHT, RADIUS);
+        random = new Random(3);
+    }
+
+    @After
+    public void tearDown() {
+        world.dispose();
+    }
+
+    /** Random full and part tile walls never make the table wrong about a segment */
+    @Test
+    public void classificationsMatchRaycast() {
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                if (random.nextInt(5) == 0) {
+                    addWall(x, y, 1, 1);
+                }
+            }
+        }
+        // Walls thinner than a tile touch it without covering it
+        for (int i = 0; i < 8; i++) {
+            addWall(random.nextInt(WIDTH) + 0.3f, random.nextInt(HEIGHT), 0.4f, 1);
+        }
+
+        int clear = 0;
+        int occluded = 0;
+        for (int i = 0; i < PAIRS; i++) {
+            int x0 = random.nextInt(WIDTH);
+            int y0 = random.nextInt(HEIGHT);
+            int x1 = Math.min(Math.max(x0 + random.nextInt(2 * RADIUS + 1) - RADIUS, 0), WIDTH - 1);
+            int y1 = Math.min(Math.max(y0 + random.nextInt(2 * RADIUS + 1) - RADIUS, 0), HEIGHT - 1);
+            int seen = table.query(x0, y0, x1, y1);
+            if (seen == VisibilityTable.OCCLUDED) {
+                occluded++;
+                for (int corner = 0; corner < 16; corner++) {
+                    assertTrue(raycast(x0 + (corner & 1), y0 + ((corner >> 1) & 1),
+                            x1 + ((corner >> 2) & 1), y1 + ((corner >> 3) & 1)));
+                }
+                for (int j = 0; j < SEGMENTS; j++) {
+                    assertTrue(raycast(x0 + random.nextFloat(), y0 + random.nextFloat(),
+                            x1 + random.nextFloat(), y1 + random.nextFloat()));
+                }
+            } else if (seen == VisibilityTable.CLEAR) {
+                clear++;
+                // Inside the tiles, as a segment along a wall's edge may or may not touch it
+                for (int j = 0; j < SEGMENTS; j++) {
+                    assertFalse(raycast(x0 + 0.01f + 0.98f * random.nextFloat(), y0 + 0.01f + 0.98f * random.nextFloat(),
+                            x1 + 0.01f + 0.98f * random.nextFloat(), y1 + 0.01f + 0.98f * random.nextFloat()));
+                }
+            }
+        }
+        // Both answers must come up, or the checks above prove nothing
+        assertTrue(clear > PAIRS / 20);
+        assertTrue(occluded > PAIRS / 20);
+    }
+
+    /** A gap between two walls in one tile leaves the pair across it PARTIAL */
+    @Test
+    public void narrowGapIsNotOccluded() {
+        addWall(3, 0, 1, 2.45f);
+        addWall(3, 2.55f, 1, 5.45f);
+        assertFalse(table.isSolid(3, 2));
+        assertEquals(VisibilityTable.PARTIAL, table.query(1, 2, 5, 2));
+        assertFalse(raycast(1.5f, 2.5f, 5.5f, 2.5f));
+    }
+
+    /** A solid column across the whole hull occludes, and a missing tile in it does not */
+    @Test
+    public void solidColumnOccludes() {
+        for (int y = 0; y < HEIGHT; y++) {
+            if (y != 10) {
+                addWall(5, y, 1, 1);
+            }
+        }
+        assertEquals(VisibilityTable.OCCLUDED, table.query(2, 3, 8, 4));
+        assertEquals(VisibilityTable.PARTIAL, table.query(2, 10, 8, 10));
+        assertEquals(VisibilityTable.CLEAR, table.query(2, 3, 4, 6));
+        assertEquals(VisibilityTable.UNKNOWN, table.query(0, 0, RADIUS + 1, 0));
+    }
+
+    /** Adds a wall to both the table and the world */
+    private void addWall(float x, float y, float w, float h) {
+        table.addWall(x, y, w, h);
+        BodyDef def = new BodyDef();
+        def.type = BodyDef.BodyType.StaticBody;
+        def.position.set(x + w / 2, y + h / 2);
+        Body body = world.createBody(def);
+        PolygonShape shape = new PolygonShape();
+        shape.setAsBox(w / 2, h / 2);
+        body.createFixture(shape, 0);
+        shape.dispose();
+    }
+
+    /** Returns true if a wall lies on the segment */
+    private boolean raycast(float x0, float y0, float x1, float y1) {
+        hit = false;
+        world.rayCast(callback, new Vector2(x0, y0), new Vector2(x1, y1));
+        return hit;
+    }
+}
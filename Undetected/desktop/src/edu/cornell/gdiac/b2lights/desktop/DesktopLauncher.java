@@ -15,6 +15,9 @@ package edu.cornell.gdiac.b2lights.desktop;
 import com.badlogic.gdx.backends.lwjgl.LwjglApplication;
 import com.badlogic.gdx.backends.lwjgl.LwjglApplicationConfiguration;
 import edu.cornell.gdiac.b2lights.GDXRoot;
+import edu.cornell.gdiac.b2lights.LevelModel;
+import edu.cornell.gdiac.b2lights.LightController;
+import edu.cornell.gdiac.b2lights.LightQuality;
 
 /**
  * The main class of the game.
@@ -30,6 +33,13 @@ public class DesktopLauncher {
 	 * This method simply exists to start a new LwjglApplication.  For desktop games,
 	 * LibGDX is built on top of LWJGL (this is not the case for Android).
 	 * 
+	 * An argument may name a light quality (low, medium or high).  Without one, the
+	 * quality is picked from the hardware.  The argument "parallel" plans guard
+	 * routes on a worker pool.  An argument may name how guards and cameras test line
+	 * of sight (raycast, grid or field_of_view); raycast is the default.  The argument
+	 * "novisibility" makes raycasts skip the wall visibility table, and "rebuildfields"
+	 * rebuilds guard flow fields from scratch instead of repairing them.
+	 *
 	 * @param arg Command line arguments
 	 */
 	public static void main (String[] arg) {
@@ -37,6 +47,20 @@ public class DesktopLauncher {
 		config.width  = 800;
 		config.height = 600;
 		config.resizable = false;
-		new LwjglApplication(new GDXRoot(), config);
+		LightQuality quality = null;
+		for (String option : arg) {
+			if (LightQuality.parse(option) != null) {
+				quality = LightQuality.parse(option);
+			} else if (LightController.SightMode.parse(option) != null) {
+				LevelModel.setSightMode(LightController.SightMode.parse(option));
+			} else if (option.equalsIgnoreCase("parallel")) {
+				LevelModel.setParallelPlanning(true);
+			} else if (option.equalsIgnoreCase("novisibility")) {
+				LevelModel.setUseVisibility(false);
+			} else if (option.equalsIgnoreCase("rebuildfields")) {
+				LevelModel.setRepairFields(false);
+			}
+		}
+		new LwjglApplication(new GDXRoot(quality), config);
 	}
 }
\ No newline at end of file